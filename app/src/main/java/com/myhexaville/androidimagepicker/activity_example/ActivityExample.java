@@ -58,8 +58,11 @@ public class ActivityExample extends AppCompatActivity {
                 imageUri -> {
                     Log.d(TAG, "refreshImagePicker: "+ imageUri);
                     Log.d(TAG, "refreshImagePicker: "+ imagePicker.getImageFile().getName());
-                    binding.image.setImageURI(imageUri);
-                });
+                })
+                .setWithImageDecode(
+                        getResources().getDisplayMetrics().widthPixels,
+                        getResources().getDisplayMetrics().heightPixels,
+                        (imageUri, bitmap) -> binding.image.setImageBitmap(bitmap));
         if (binding.withCrop.isChecked()) {
             imagePicker.setWithImageCrop(
                     Integer.parseInt(binding.aspectRatioX.getText().toString()),
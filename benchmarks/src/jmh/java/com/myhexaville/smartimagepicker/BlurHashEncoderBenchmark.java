@@ -0,0 +1,50 @@
+package com.myhexaville.smartimagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Placeholder encoding on the pixels of the tiny decode, only the returned string should be allocated
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BlurHashEncoderBenchmark {
+    @Param({"4x3", "9x9"})
+    public String components;
+
+    private BlurHashEncoder encoder;
+    private int width, height;
+    private int componentsX, componentsY;
+
+    @Setup
+    public void setUp() throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(
+                ImageCorpus.jpeg(BlurHashEncoder.MAX_SIZE, BlurHashEncoder.MAX_SIZE * 3 / 4)));
+        width = image.getWidth();
+        height = image.getHeight();
+        encoder = BlurHashEncoder.get();
+        image.getRGB(0, 0, width, height, encoder.pixels, 0, width);
+        String[] parts = components.split("x");
+        componentsX = Integer.parseInt(parts[0]);
+        componentsY = Integer.parseInt(parts[1]);
+    }
+
+    @Benchmark
+    public String encode() {
+        return encoder.encode(width, height, componentsX, componentsY);
+    }
+}
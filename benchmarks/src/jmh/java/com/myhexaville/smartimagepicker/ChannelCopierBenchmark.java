@@ -0,0 +1,75 @@
+package com.myhexaville.smartimagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Import copy loops, kernel transfer between file channels against the pooled buffer fallback
+ * used for pipes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChannelCopierBenchmark {
+    @Param({ImageCorpus.SMALL, ImageCorpus.CAMERA_12MP})
+    public String size;
+
+    private File directory;
+    private File source;
+    private File target;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = ImageCorpus.newTempDirectory();
+        source = ImageCorpus.write(directory, "source.jpg", ImageCorpus.jpeg(size));
+        target = new File(directory, "target.jpg");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ImageCorpus.delete(directory);
+    }
+
+    @Benchmark
+    public long transfer() throws IOException {
+        try (FileChannel in = new FileInputStream(source).getChannel();
+             FileChannel out = new FileOutputStream(target).getChannel()) {
+            return ChannelCopier.transfer(in, out, in.size());
+        }
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        try (FileChannel in = new FileInputStream(source).getChannel();
+             FileChannel out = new FileOutputStream(target).getChannel()) {
+            return ChannelCopier.copy(in, out);
+        }
+    }
+
+    /**
+     * Same as {@link #copy()} with a stream source, like a content provider that only gives a pipe
+     */
+    @Benchmark
+    public long copyFromStream() throws IOException {
+        try (ReadableByteChannel in = Channels.newChannel(new FileInputStream(source));
+             FileChannel out = new FileOutputStream(target).getChannel()) {
+            return ChannelCopier.copy(in, out);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.myhexaville.smartimagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Orientation is read before every decode, so only the header should be touched
+ * no matter how big the image is
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExifParserBenchmark {
+    @Param({ImageCorpus.SMALL, ImageCorpus.CAMERA_12MP})
+    public String size;
+
+    @Param({"none", "motorola", "intel"})
+    public String exif;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] plain = ImageCorpus.jpeg(size);
+        switch (exif) {
+            case "motorola":
+                jpeg = ImageCorpus.withExifOrientation(plain, ExifParser.ORIENTATION_ROTATE_90, ByteOrder.BIG_ENDIAN);
+                break;
+            case "intel":
+                jpeg = ImageCorpus.withExifOrientation(plain, ExifParser.ORIENTATION_ROTATE_90, ByteOrder.LITTLE_ENDIAN);
+                break;
+            default:
+                jpeg = plain;
+        }
+    }
+
+    @Benchmark
+    public int readOrientation() throws IOException {
+        return ExifParser.readOrientation(new ByteArrayInputStream(jpeg));
+    }
+}
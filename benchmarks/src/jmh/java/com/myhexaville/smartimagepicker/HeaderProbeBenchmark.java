@@ -0,0 +1,43 @@
+package com.myhexaville.smartimagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probing reads the Exif segment and frame header through the same small buffer ImageProbe uses,
+ * the time shouldn't grow with the image size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeaderProbeBenchmark {
+    private static final int READ_BUFFER_SIZE = 4 * 1024;
+
+    @Param({ImageCorpus.SMALL, ImageCorpus.CAMERA_12MP})
+    public String size;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() throws IOException {
+        jpeg = ImageCorpus.withExifOrientation(ImageCorpus.jpeg(size), ExifParser.ORIENTATION_ROTATE_90,
+                ByteOrder.BIG_ENDIAN);
+    }
+
+    @Benchmark
+    public HeaderProbe.Header probeJpeg() throws IOException {
+        return HeaderProbe.read(new BufferedInputStream(new ByteArrayInputStream(jpeg), READ_BUFFER_SIZE));
+    }
+}
@@ -0,0 +1,104 @@
+package com.myhexaville.smartimagepicker;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Test images generated with ImageIO, the same for every run so results can be compared
+ * between releases. Sizes match what phone cameras and gallery apps usually return.
+ */
+final class ImageCorpus {
+    static final String SMALL = "640x480";
+    static final String FULL_HD = "1920x1080";
+    static final String CAMERA_12MP = "4032x3024";
+
+    private ImageCorpus() {
+    }
+
+    static byte[] jpeg(String size) throws IOException {
+        String[] parts = size.split("x");
+        return jpeg(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    /**
+     * Gradient with noise, so the encoded size is closer to a photo than a flat color would be
+     */
+    static byte[] jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        Random random = new Random(width * 31L + height);
+        for (int i = 0; i < width * height / 8; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Inserts an EXIF APP1 segment with {@code orientation} right after SOI, the way cameras do
+     */
+    static byte[] withExifOrientation(byte[] jpeg, int orientation, ByteOrder order) {
+        ByteBuffer tiff = ByteBuffer.allocate(26).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42);
+        tiff.putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112);
+        tiff.putShort((short) 3);
+        tiff.putInt(1);
+        tiff.putShort((short) orientation);
+        tiff.putShort((short) 0);
+        tiff.putInt(0);
+
+        byte[] header = {'E', 'x', 'i', 'f', 0, 0};
+        int length = 2 + header.length + tiff.capacity();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length + length + 2);
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(ExifParser.MARKER_APP1);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(header, 0, header.length);
+        out.write(tiff.array(), 0, tiff.capacity());
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    static File write(File directory, String name, byte[] bytes) throws IOException {
+        File file = new File(directory, name);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+        return file;
+    }
+
+    static File newTempDirectory() throws IOException {
+        return Files.createTempDirectory("smart-image-picker-jmh").toFile();
+    }
+
+    static void delete(File directory) throws IOException {
+        try (Stream<java.nio.file.Path> paths = Files.walk(directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+}
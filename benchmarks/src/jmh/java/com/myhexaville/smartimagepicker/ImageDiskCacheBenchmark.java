@@ -0,0 +1,107 @@
+package com.myhexaville.smartimagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Journal replay when the cache is first used, and eviction of the cache directory down to
+ * its budget. Trims run on the calling thread so they're part of the measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ImageDiskCacheBenchmark {
+    private static final Executor DIRECT = Runnable::run;
+
+    /**
+     * A cache full of committed images, each read a few times, like after a week of use.
+     * The journal isn't replayed yet
+     */
+    @State(Scope.Thread)
+    public static class ClosedCache {
+        @Param({"16", "256"})
+        public int entries;
+
+        File directory;
+        ImageDiskCache cache;
+        byte[] jpeg;
+        int nextKey;
+
+        @Setup(Level.Trial)
+        public void createImage() throws IOException {
+            jpeg = ImageCorpus.jpeg(ImageCorpus.SMALL);
+        }
+
+        @Setup(Level.Invocation)
+        public void fillCache() throws IOException {
+            directory = ImageCorpus.newTempDirectory();
+            cache = ImageDiskCache.open(directory, Long.MAX_VALUE, Integer.MAX_VALUE, DIRECT);
+            for (int i = 0; i < entries; i++) {
+                String key = "import-" + i + ".jpg";
+                ImageCorpus.write(directory, key, jpeg);
+                cache.newFile(key);
+                cache.commit(key);
+            }
+            for (int i = 0; i < entries * 3; i++) {
+                cache.get("import-" + (i * 7 % entries) + ".jpg");
+            }
+            cache.close();
+            nextKey = entries;
+        }
+
+        @TearDown(Level.Invocation)
+        public void deleteCache() throws IOException {
+            cache.close();
+            ImageCorpus.delete(directory);
+        }
+    }
+
+    /**
+     * Same cache with the journal already replayed
+     */
+    public static class OpenCache extends ClosedCache {
+        @Setup(Level.Invocation)
+        public void replay() throws IOException {
+            cache.size();
+        }
+    }
+
+    @Benchmark
+    public long replayJournal(ClosedCache state) throws IOException {
+        return state.cache.size();
+    }
+
+    /**
+     * Budget shrinks to a quarter, evicting three quarters of the directory
+     */
+    @Benchmark
+    public int trimToBudget(OpenCache state) throws IOException {
+        state.cache.setBudget(Long.MAX_VALUE, Math.max(1, state.entries / 4));
+        return state.cache.entryCount();
+    }
+
+    /**
+     * A new capture committed into a full cache evicts the least recently used file
+     */
+    @Benchmark
+    public int commitIntoFullCache(OpenCache state) throws IOException {
+        state.cache.setBudget(Long.MAX_VALUE, state.entries);
+        String key = "camera-" + state.nextKey++ + ".jpg";
+        ImageCorpus.write(state.directory, key, state.jpeg);
+        state.cache.newFile(key);
+        state.cache.commit(key);
+        return state.cache.entryCount();
+    }
+}
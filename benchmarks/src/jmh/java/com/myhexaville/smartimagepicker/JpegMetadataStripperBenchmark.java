@@ -0,0 +1,65 @@
+package com.myhexaville.smartimagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stripping a camera JPEG should cost about as much as copying it, compare with
+ * {@link ChannelCopierBenchmark#copy()}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JpegMetadataStripperBenchmark {
+    @Param({ImageCorpus.SMALL, ImageCorpus.CAMERA_12MP})
+    public String size;
+
+    @Param({"none", "orientation"})
+    public String kept;
+
+    private File directory;
+    private File source;
+    private File target;
+    private EnumSet<JpegMetadata> keptMetadata;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = ImageCorpus.newTempDirectory();
+        byte[] jpeg = ImageCorpus.withExifOrientation(ImageCorpus.jpeg(size),
+                ExifParser.ORIENTATION_ROTATE_90, ByteOrder.BIG_ENDIAN);
+        source = ImageCorpus.write(directory, "source.jpg", jpeg);
+        target = new File(directory, "target.jpg");
+        keptMetadata = kept.equals("orientation")
+                ? EnumSet.of(JpegMetadata.ORIENTATION)
+                : EnumSet.noneOf(JpegMetadata.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        ImageCorpus.delete(directory);
+    }
+
+    @Benchmark
+    public int strip() throws IOException {
+        try (FileChannel in = new FileInputStream(source).getChannel();
+             FileChannel out = new FileOutputStream(target).getChannel()) {
+            return JpegMetadataStripper.strip(in, out, keptMetadata, Cancellable.NEVER);
+        }
+    }
+}
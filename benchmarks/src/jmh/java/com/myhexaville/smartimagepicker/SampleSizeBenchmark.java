@@ -0,0 +1,38 @@
+package com.myhexaville.smartimagepicker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SampleSizeBenchmark {
+    // width, height pairs of common camera and screenshot sizes
+    private final int[] sizes = {640, 480, 1920, 1080, 1080, 2340, 4032, 3024, 3024, 4032, 6000, 4000, 8000, 6000};
+    private final int maxWidth = 1080;
+    private final int maxHeight = 1920;
+
+    @Benchmark
+    public int calculate() {
+        int sum = 0;
+        for (int i = 0; i < sizes.length; i += 2) {
+            sum += SampleSize.calculate(sizes[i], sizes[i + 1], maxWidth, maxHeight);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float fitScale() {
+        float sum = 0;
+        for (int i = 0; i < sizes.length; i += 2) {
+            sum += SampleSize.fitScale(sizes[i], sizes[i + 1], maxWidth, maxHeight);
+        }
+        return sum;
+    }
+}
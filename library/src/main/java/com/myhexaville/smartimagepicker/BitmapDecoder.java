@@ -0,0 +1,190 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes an image {@link Uri} into a bitmap that fits the given max width/height.
+ * Bounds are read first and the image is decoded with a power of two sample size,
+ * so the full resolution bitmap is never allocated. EXIF orientation is read from the JPEG
+ * header and applied in the same pass as the final scale, so the result is upright
+ * and there's no separate rotated copy. Don't call it from the main thread.
+ */
+public final class BitmapDecoder {
+
+    private BitmapDecoder() {
+    }
+
+    @NonNull
+    public static Bitmap decode(Context context, Uri imageUri, int maxWidth, int maxHeight) throws IOException {
+        return decode(context, imageUri, maxWidth, maxHeight, null);
+    }
+
+    /**
+     * Same as {@link #decode(Context, Uri, int, int)}, decoding into a pooled bitmap when there's one
+     * big enough, and returning the subsampled bitmap to the pool once it's scaled
+     */
+    @NonNull
+    public static Bitmap decode(Context context, Uri imageUri, int maxWidth, int maxHeight,
+                                @Nullable BitmapPool pool) throws IOException {
+        return decode(context, imageUri, maxWidth, maxHeight, pool, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Same as {@link #decode(Context, Uri, int, int, BitmapPool)}, {@link Bitmap.Config#RGB_565}
+     * is only used for JPEGs, other formats may have transparency
+     */
+    @NonNull
+    static Bitmap decode(Context context, Uri imageUri, int maxWidth, int maxHeight,
+                         @Nullable BitmapPool pool, Bitmap.Config preferredConfig) throws IOException {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxWidth + "x" + maxHeight);
+        }
+        ContentResolver resolver = context.getContentResolver();
+        int orientation = readOrientation(resolver, imageUri);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = openStream(resolver, imageUri)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Couldn't read image bounds of " + imageUri);
+        }
+
+        options.inJustDecodeBounds = false;
+        Bitmap.Config config = preferredConfig == Bitmap.Config.RGB_565 && "image/jpeg".equals(options.outMimeType)
+                ? Bitmap.Config.RGB_565
+                : Bitmap.Config.ARGB_8888;
+        options.inPreferredConfig = config;
+        boolean swapped = ExifParser.isSwapped(orientation);
+        options.inSampleSize = SampleSize.calculate(
+                swapped ? options.outHeight : options.outWidth,
+                swapped ? options.outWidth : options.outHeight,
+                maxWidth, maxHeight);
+        if (pool != null) {
+            options.inMutable = true;
+            options.inBitmap = pool.get(
+                    ceilDiv(options.outWidth, options.inSampleSize),
+                    ceilDiv(options.outHeight, options.inSampleSize),
+                    config);
+        }
+        Bitmap sampled;
+        try {
+            sampled = decodeSampled(resolver, imageUri, options);
+        } catch (IllegalArgumentException e) {
+            if (pool == null || options.inBitmap == null) {
+                throw e;
+            }
+            // the pooled bitmap can't be reused for this image
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            sampled = decodeSampled(resolver, imageUri, options);
+        }
+        if (sampled == null) {
+            throw new IOException("Couldn't decode " + imageUri);
+        }
+        return transform(sampled, maxWidth, maxHeight, orientation, pool);
+    }
+
+    /**
+     * Returns the EXIF orientation of a JPEG (1..8, same values as ExifInterface.ORIENTATION_*),
+     * reading only the header. 1 if there's none
+     */
+    public static int readOrientation(Context context, Uri imageUri) throws IOException {
+        return readOrientation(context.getContentResolver(), imageUri);
+    }
+
+    private static int readOrientation(ContentResolver resolver, Uri imageUri) throws IOException {
+        try (InputStream in = openStream(resolver, imageUri)) {
+            return ExifParser.readOrientation(in);
+        }
+    }
+
+    private static Bitmap decodeSampled(ContentResolver resolver, Uri imageUri, BitmapFactory.Options options) throws IOException {
+        try (InputStream in = openStream(resolver, imageUri)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    /**
+     * Scales the bitmap to fit and applies the orientation with one matrix, so only one
+     * new bitmap is created. The source goes back to the pool or is recycled
+     */
+    @NonNull
+    static Bitmap transform(Bitmap bitmap, int maxWidth, int maxHeight, int orientation, @Nullable BitmapPool pool) {
+        boolean swapped = ExifParser.isSwapped(orientation);
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float scale = SampleSize.fitScale(swapped ? height : width, swapped ? width : height, maxWidth, maxHeight);
+        if (scale >= 1f && orientation == ExifParser.ORIENTATION_NORMAL) {
+            return bitmap;
+        }
+        Matrix matrix = new Matrix();
+        if (scale < 1f) {
+            matrix.setScale(scale, scale);
+        }
+        applyOrientation(matrix, orientation);
+        Bitmap transformed = Bitmap.createBitmap(bitmap, 0, 0, width, height, matrix, true);
+        if (transformed != bitmap) {
+            if (pool != null) {
+                pool.put(bitmap);
+            } else {
+                bitmap.recycle();
+            }
+        }
+        return transformed;
+    }
+
+    static void applyOrientation(Matrix matrix, int orientation) {
+        switch (orientation) {
+            case ExifParser.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifParser.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifParser.ORIENTATION_FLIP_VERTICAL:
+                matrix.postRotate(180);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifParser.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifParser.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifParser.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifParser.ORIENTATION_ROTATE_270:
+                matrix.postRotate(-90);
+                break;
+        }
+    }
+
+    private static int ceilDiv(int size, int divisor) {
+        return (size + divisor - 1) / divisor;
+    }
+
+    @NonNull
+    private static InputStream openStream(ContentResolver resolver, Uri imageUri) throws IOException {
+        InputStream in = resolver.openInputStream(imageUri);
+        if (in == null) {
+            throw new FileNotFoundException("Couldn't open " + imageUri);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,151 @@
+package com.myhexaville.smartimagepicker;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
+
+import java.io.IOException;
+
+/**
+ * Optional memory tier for decoded picker results, keyed by source uri, target size and transform.
+ * Bitmaps returned from this cache may be shown on several screens at once, so don't recycle them.
+ * Eviction only drops the cache's reference, a bitmap the app still shows is never reused or
+ * recycled. The {@link BitmapPool} next to the cache only holds the decoders' intermediate bitmaps,
+ * which never leave the library.
+ * <p>
+ * Create one per app (e.g. in your Application) and pass it to every picker with
+ * {@link ImagePicker#setWithMemoryCache(BitmapMemoryCache)} so screens share it.
+ */
+public class BitmapMemoryCache {
+    private final BitmapPool pool;
+    private final LruCache<String, Bitmap> cache;
+
+    public BitmapMemoryCache(int maxCacheBytes, int maxPoolBytes) {
+        this.pool = new BitmapPool(maxPoolBytes);
+        this.cache = new LruCache<String, Bitmap>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return BitmapPool.allocationSize(value);
+            }
+        };
+    }
+
+    /**
+     * Cache of 1/8 and pool of 1/16 of the app's memory class
+     */
+    public static BitmapMemoryCache withDefaultBudget(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassBytes = activityManager.getMemoryClass() * 1024 * 1024;
+        return new BitmapMemoryCache(memoryClassBytes / 8, memoryClassBytes / 16);
+    }
+
+    static String key(Uri imageUri, int maxWidth, int maxHeight, String transform) {
+        return imageUri + "|" + maxWidth + "x" + maxHeight + "|" + transform;
+    }
+
+    @Nullable
+    public Bitmap get(Uri imageUri, int maxWidth, int maxHeight) {
+        return cache.get(key(imageUri, maxWidth, maxHeight, ""));
+    }
+
+    /**
+     * Returns the cached bitmap or decodes it with {@link BitmapDecoder}, reusing pooled memory for
+     * the intermediate bitmaps. The returned bitmap is never pooled
+     */
+    @WorkerThread
+    @NonNull
+    public Bitmap getOrDecode(Context context, Uri imageUri, int maxWidth, int maxHeight) throws IOException {
+        return getOrDecode(context, imageUri, maxWidth, maxHeight, Bitmap.Config.ARGB_8888);
+    }
+
+    @WorkerThread
+    @NonNull
+    Bitmap getOrDecode(Context context, Uri imageUri, int maxWidth, int maxHeight, Bitmap.Config config) throws IOException {
+        String key = key(imageUri, maxWidth, maxHeight, config == Bitmap.Config.RGB_565 ? "565" : "");
+        Bitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            bitmap = BitmapDecoder.decode(context, imageUri, maxWidth, maxHeight, pool, config);
+            cache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    @Nullable
+    Bitmap get(String key) {
+        return cache.get(key);
+    }
+
+    void put(String key, Bitmap bitmap) {
+        cache.put(key, bitmap);
+    }
+
+    public BitmapPool getPool() {
+        return pool;
+    }
+
+    public void trimToSize(int maxBytes) {
+        cache.trimToSize(maxBytes);
+    }
+
+    public void evictAll() {
+        cache.evictAll();
+    }
+
+    /**
+     * Shrinks the cache for {@link MemoryPressure}. Evicted entries are only dropped, bitmaps the app
+     * still shows stay valid, and only the pool's own intermediate bitmaps are recycled
+     */
+    void trimMemory(MemoryLevel level) {
+        switch (level) {
+            case MODERATE:
+                cache.trimToSize(cache.maxSize() / 2);
+                pool.trim(pool.getCurrentBytes() / 2);
+                break;
+            case LOW:
+                cache.trimToSize(cache.maxSize() / 4);
+                pool.clear();
+                break;
+            case CRITICAL:
+                cache.evictAll();
+                pool.clear();
+                break;
+            default:
+                break;
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int hitCount() {
+        return cache.hitCount();
+    }
+
+    public int missCount() {
+        return cache.missCount();
+    }
+
+    public int evictionCount() {
+        return cache.evictionCount();
+    }
+
+    @Override
+    public String toString() {
+        return "BitmapMemoryCache{" +
+                "bytes=" + cache.size() + "/" + cache.maxSize() +
+                ", hits=" + hitCount() +
+                ", misses=" + missCount() +
+                ", evictions=" + evictionCount() +
+                ", poolBytes=" + pool.getCurrentBytes() +
+                ", poolHits=" + pool.hitCount() +
+                ", poolMisses=" + pool.missCount() +
+                ", poolEvictions=" + pool.evictionCount() +
+                '}';
+    }
+}
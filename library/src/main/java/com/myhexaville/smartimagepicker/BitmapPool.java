@@ -0,0 +1,150 @@
+package com.myhexaville.smartimagepicker;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mutable bitmaps bucketed by allocation size, handed out as {@link android.graphics.BitmapFactory.Options#inBitmap}
+ * so decodes reuse memory instead of allocating. Reuse of a bigger bitmap needs KitKat,
+ * on older versions the pool always misses.
+ */
+public class BitmapPool {
+    /**
+     * Don't hand out a bitmap more than this many times bigger than needed
+     */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private int maxBytes;
+    private int currentBytes;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+
+    public BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a bitmap that can be decoded into at {@code width x height}, or null
+     */
+    @Nullable
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            missCount++;
+            return null;
+        }
+        int needed = width * height * bytesPerPixel(config);
+        Map.Entry<Integer, ArrayDeque<Bitmap>> bucket = buckets.ceilingEntry(needed);
+        if (bucket == null || bucket.getKey() > needed * MAX_SIZE_MULTIPLE) {
+            missCount++;
+            return null;
+        }
+        Bitmap bitmap = bucket.getValue().pollFirst();
+        if (bucket.getValue().isEmpty()) {
+            buckets.remove(bucket.getKey());
+        }
+        currentBytes -= bucket.getKey();
+        hitCount++;
+        return bitmap;
+    }
+
+    /**
+     * Offers a bitmap nobody uses anymore, recycles it if it can't be pooled. Never offer a bitmap
+     * that was handed to a view or listener, the next decode writes into it
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (!canPool(bitmap)) {
+            if (!bitmap.isRecycled()) {
+                bitmap.recycle();
+            }
+            return;
+        }
+        int size = allocationSize(bitmap);
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addFirst(bitmap);
+        currentBytes += size;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized void setMaxBytes(int maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * Evicts down to {@code bytes} without changing the max size
+     */
+    synchronized void trim(int bytes) {
+        trimToSize(bytes);
+    }
+
+    public synchronized int getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    private void trimToSize(int size) {
+        while (currentBytes > size && !buckets.isEmpty()) {
+            // dropping from the biggest bucket frees the most memory per bitmap
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = buckets.lastEntry();
+            Bitmap bitmap = largest.getValue().pollLast();
+            if (largest.getValue().isEmpty()) {
+                buckets.remove(largest.getKey());
+            }
+            currentBytes -= largest.getKey();
+            evictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    private boolean canPool(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                && !bitmap.isRecycled()
+                && bitmap.isMutable()
+                && bitmap.getConfig() != null
+                && allocationSize(bitmap) <= maxBytes;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    static int allocationSize(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
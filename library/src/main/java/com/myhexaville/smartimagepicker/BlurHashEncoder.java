@@ -0,0 +1,162 @@
+package com.myhexaville.smartimagepicker;
+
+/**
+ * Encodes pixels into a BlurHash string, a few dozen characters a feed can draw as a blurred
+ * placeholder. Works on primitive arrays the encoder owns, one per thread, so encoding allocates
+ * nothing but the returned string. The DCT is separable, each row is summed once per horizontal
+ * component instead of once per component pair. Free of Android types so it can run on a plain JVM.
+ */
+final class BlurHashEncoder {
+    /**
+     * Pixels are read from an image that fits this box, more doesn't change the hash visibly
+     */
+    static final int MAX_SIZE = 32;
+    static final int MAX_COMPONENTS = 9;
+
+    private static final char[] BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~".toCharArray();
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+
+    static {
+        for (int i = 0; i < SRGB_TO_LINEAR.length; i++) {
+            double value = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (value <= 0.04045 ? value / 12.92 : Math.pow((value + 0.055) / 1.055, 2.4));
+        }
+    }
+
+    private static final ThreadLocal<BlurHashEncoder> encoders = new ThreadLocal<BlurHashEncoder>() {
+        @Override
+        protected BlurHashEncoder initialValue() {
+            return new BlurHashEncoder();
+        }
+    };
+
+    /**
+     * ARGB pixels, filled by the caller, at most {@link #MAX_SIZE} squared
+     */
+    final int[] pixels = new int[MAX_SIZE * MAX_SIZE];
+    private final float[] cosX = new float[MAX_COMPONENTS * MAX_SIZE];
+    private final float[] cosY = new float[MAX_COMPONENTS * MAX_SIZE];
+    /**
+     * Linear r, g, b of each component, then of each horizontal component for the current row
+     */
+    private final float[] factors = new float[MAX_COMPONENTS * MAX_COMPONENTS * 3];
+    private final float[] rowFactors = new float[MAX_COMPONENTS * 3];
+    private final char[] hash = new char[1 + 1 + 4 + 2 * (MAX_COMPONENTS * MAX_COMPONENTS - 1)];
+
+    private BlurHashEncoder() {
+    }
+
+    /**
+     * This thread's encoder, don't pass it to another thread
+     */
+    static BlurHashEncoder get() {
+        return encoders.get();
+    }
+
+    /**
+     * Encodes the first {@code width * height} of {@link #pixels}, a row after another
+     */
+    String encode(int width, int height, int componentsX, int componentsY) {
+        if (width <= 0 || height <= 0 || width * height > pixels.length) {
+            throw new IllegalArgumentException("Size must be 1.." + MAX_SIZE + " squared: " + width + "x" + height);
+        }
+        if (componentsX < 1 || componentsX > MAX_COMPONENTS || componentsY < 1 || componentsY > MAX_COMPONENTS) {
+            throw new IllegalArgumentException("Components must be 1.." + MAX_COMPONENTS + ": "
+                    + componentsX + "x" + componentsY);
+        }
+        fillCosines(cosX, componentsX, width);
+        fillCosines(cosY, componentsY, height);
+        int factorCount = componentsX * componentsY * 3;
+        for (int i = 0; i < factorCount; i++) {
+            factors[i] = 0;
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int i = 0; i < componentsX * 3; i++) {
+                rowFactors[i] = 0;
+            }
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[row + x];
+                float r = SRGB_TO_LINEAR[(pixel >> 16) & 0xFF];
+                float g = SRGB_TO_LINEAR[(pixel >> 8) & 0xFF];
+                float b = SRGB_TO_LINEAR[pixel & 0xFF];
+                for (int i = 0; i < componentsX; i++) {
+                    float basis = cosX[i * width + x];
+                    rowFactors[i * 3] += basis * r;
+                    rowFactors[i * 3 + 1] += basis * g;
+                    rowFactors[i * 3 + 2] += basis * b;
+                }
+            }
+            for (int j = 0; j < componentsY; j++) {
+                float basis = cosY[j * height + y];
+                for (int i = 0; i < componentsX; i++) {
+                    int factor = (j * componentsX + i) * 3;
+                    factors[factor] += basis * rowFactors[i * 3];
+                    factors[factor + 1] += basis * rowFactors[i * 3 + 1];
+                    factors[factor + 2] += basis * rowFactors[i * 3 + 2];
+                }
+            }
+        }
+
+        float maximum = 0;
+        for (int i = 0; i < factorCount; i++) {
+            // the DC is an average, the AC components are weighted twice
+            factors[i] *= (i < 3 ? 1f : 2f) / (width * height);
+            if (i >= 3) {
+                maximum = Math.max(maximum, Math.abs(factors[i]));
+            }
+        }
+
+        int length = 0;
+        length = encode83((componentsX - 1) + (componentsY - 1) * 9, 1, length);
+        float maximumValue;
+        if (factorCount > 3) {
+            int quantised = Math.max(0, Math.min(82, (int) Math.floor(maximum * 166 - 0.5)));
+            maximumValue = (quantised + 1) / 166f;
+            length = encode83(quantised, 1, length);
+        } else {
+            maximumValue = 1;
+            length = encode83(0, 1, length);
+        }
+        length = encode83((linearToSrgb(factors[0]) << 16) + (linearToSrgb(factors[1]) << 8)
+                + linearToSrgb(factors[2]), 4, length);
+        for (int i = 3; i < factorCount; i += 3) {
+            int value = quantiseAc(factors[i], maximumValue) * 19 * 19
+                    + quantiseAc(factors[i + 1], maximumValue) * 19
+                    + quantiseAc(factors[i + 2], maximumValue);
+            length = encode83(value, 2, length);
+        }
+        return new String(hash, 0, length);
+    }
+
+    private static void fillCosines(float[] cosines, int components, int size) {
+        for (int i = 0; i < components; i++) {
+            for (int p = 0; p < size; p++) {
+                cosines[i * size + p] = (float) Math.cos(Math.PI * i * p / size);
+            }
+        }
+    }
+
+    private static int quantiseAc(float value, float maximumValue) {
+        double scaled = value / maximumValue;
+        double signedRoot = Math.copySign(Math.sqrt(Math.abs(scaled)), scaled);
+        return (int) Math.max(0, Math.min(18, Math.floor(signedRoot * 9 + 9.5)));
+    }
+
+    private static int linearToSrgb(float value) {
+        double clamped = Math.max(0, Math.min(1, value));
+        return clamped <= 0.0031308
+                ? (int) (clamped * 12.92 * 255 + 0.5)
+                : (int) ((1.055 * Math.pow(clamped, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private int encode83(int value, int digits, int offset) {
+        for (int i = digits - 1; i >= 0; i--) {
+            hash[offset + i] = BASE83[value % 83];
+            value /= 83;
+        }
+        return offset + digits;
+    }
+}
@@ -0,0 +1,37 @@
+package com.myhexaville.smartimagepicker;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Small pool of direct buffers so copy loops don't allocate a new native buffer per file.
+ */
+final class ByteBufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+
+    ByteBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+    }
+
+    ByteBuffer acquire() {
+        synchronized (buffers) {
+            ByteBuffer buffer = buffers.pollFirst();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (buffers) {
+            if (buffers.size() < maxPooled) {
+                buffers.addFirst(buffer);
+            }
+        }
+    }
+}
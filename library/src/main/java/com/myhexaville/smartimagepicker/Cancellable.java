@@ -0,0 +1,19 @@
+package com.myhexaville.smartimagepicker;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Checked by long running loops, so work for a cancelled pick stops at the next chunk.
+ * Free of Android types so it can run on a plain JVM.
+ */
+interface Cancellable {
+    Cancellable NEVER = () -> false;
+
+    boolean isCancelled();
+
+    default void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Pick cancelled");
+        }
+    }
+}
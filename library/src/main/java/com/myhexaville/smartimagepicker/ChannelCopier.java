@@ -0,0 +1,82 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Copy loops used for importing picked images. {@link #transfer} lets the kernel move bytes
+ * between two file channels, {@link #copy} is the fallback for pipes and other streams.
+ * Both check for cancellation between chunks, and the copy loop can hash what goes through it.
+ */
+final class ChannelCopier {
+    static final int BUFFER_SIZE = 64 * 1024;
+    static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+    private static final ByteBufferPool bufferPool = new ByteBufferPool(BUFFER_SIZE, 4);
+
+    private ChannelCopier() {
+    }
+
+    /**
+     * Copies up to {@code size} bytes starting at the source's position 0,
+     * stops early if the source turns out to be shorter
+     */
+    static long transfer(FileChannel source, FileChannel target, long size) throws IOException {
+        return transfer(source, target, size, Cancellable.NEVER);
+    }
+
+    static long transfer(FileChannel source, FileChannel target, long size, Cancellable cancellable) throws IOException {
+        long position = 0;
+        while (position < size) {
+            cancellable.throwIfCancelled();
+            long transferred = source.transferTo(position, Math.min(size - position, TRANSFER_CHUNK_SIZE), target);
+            if (transferred <= 0) {
+                break;
+            }
+            position += transferred;
+        }
+        return position;
+    }
+
+    /**
+     * Copies everything left in the source through a pooled direct buffer
+     */
+    static long copy(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+        return copy(source, target, Cancellable.NEVER);
+    }
+
+    static long copy(ReadableByteChannel source, WritableByteChannel target, Cancellable cancellable) throws IOException {
+        return copy(source, target, null, cancellable);
+    }
+
+    /**
+     * Same as {@link #copy(ReadableByteChannel, WritableByteChannel, Cancellable)}, updating
+     * {@code digest} with every chunk, so the content is hashed without reading it twice
+     */
+    static long copy(ReadableByteChannel source, WritableByteChannel target, MessageDigest digest,
+                     Cancellable cancellable) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            long total = 0;
+            while (source.read(buffer) != -1) {
+                cancellable.throwIfCancelled();
+                buffer.flip();
+                if (digest != null) {
+                    buffer.mark();
+                    digest.update(buffer);
+                    buffer.reset();
+                }
+                while (buffer.hasRemaining()) {
+                    total += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return total;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+}
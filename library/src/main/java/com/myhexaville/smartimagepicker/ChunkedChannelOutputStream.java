@@ -0,0 +1,100 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Collects what an encoder writes into one pooled chunk and writes every full chunk to the sink,
+ * and to the tee channel if there is one. Only a chunk is ever held in memory, and a blocking sink
+ * holds the encoder back until it took the chunk. Free of Android types so it can run on a plain JVM.
+ * <p>
+ * Closing flushes the last chunk, the channels stay open.
+ */
+final class ChunkedChannelOutputStream extends OutputStream {
+    static final int CHUNK_SIZE = ChannelCopier.BUFFER_SIZE;
+    private static final ByteBufferPool chunkPool = new ByteBufferPool(CHUNK_SIZE, 4);
+
+    private final WritableByteChannel sink;
+    private final WritableByteChannel tee;
+    private final Cancellable cancellable;
+    private ByteBuffer chunk;
+    private long bytesWritten;
+
+    /**
+     * @param tee gets the same chunks after the sink, null for none
+     */
+    ChunkedChannelOutputStream(WritableByteChannel sink, WritableByteChannel tee, Cancellable cancellable) {
+        this.sink = sink;
+        this.tee = tee;
+        this.cancellable = cancellable;
+        this.chunk = chunkPool.acquire();
+    }
+
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        chunk.put((byte) b);
+        if (!chunk.hasRemaining()) {
+            writeChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            int count = Math.min(length, chunk.remaining());
+            chunk.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+            if (!chunk.hasRemaining()) {
+                writeChunk();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (chunk == null) {
+            return;
+        }
+        try {
+            if (chunk.position() > 0) {
+                writeChunk();
+            }
+        } finally {
+            chunkPool.release(chunk);
+            chunk = null;
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        cancellable.throwIfCancelled();
+        chunk.flip();
+        writeFully(sink);
+        if (tee != null) {
+            chunk.rewind();
+            writeFully(tee);
+        }
+        bytesWritten += chunk.limit();
+        chunk.clear();
+    }
+
+    private void writeFully(WritableByteChannel channel) throws IOException {
+        while (chunk.hasRemaining()) {
+            channel.write(chunk);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (chunk == null) {
+            throw new IOException("Stream closed");
+        }
+    }
+}
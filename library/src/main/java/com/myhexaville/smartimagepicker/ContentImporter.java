@@ -0,0 +1,109 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.webkit.MimeTypeMap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies picked content:// images into a file the library owns. Regular files are moved with
+ * {@link FileChannel#transferTo}, providers backed by pipes fall back to a buffered loop.
+ * When the content has to be hashed it always goes through the buffered loop.
+ * Blocks, don't call it from the main thread.
+ */
+final class ContentImporter {
+
+    private ContentImporter() {
+    }
+
+    @NonNull
+    static ImportResult importImage(Context context, Uri source, File target, Cancellable cancellable) throws IOException {
+        return importImage(context, source, target, null, cancellable);
+    }
+
+    /**
+     * Same as {@link #importImage(Context, Uri, File, Cancellable)}, updating {@code digest} with the
+     * copied bytes when it's not null
+     */
+    @NonNull
+    static ImportResult importImage(Context context, Uri source, File target, @Nullable MessageDigest digest,
+                                    Cancellable cancellable) throws IOException {
+        long start = System.nanoTime();
+        ParcelFileDescriptor descriptor = context.getContentResolver().openFileDescriptor(source, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException("Couldn't open " + source);
+        }
+        long bytesCopied = 0;
+        boolean zeroCopy = false;
+        try (ParcelFileDescriptor pfd = descriptor;
+             FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+             FileOutputStream out = new FileOutputStream(target)) {
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long size = pfd.getStatSize();
+            if (size > 0 && digest == null) {
+                bytesCopied = ChannelCopier.transfer(inChannel, outChannel, size, cancellable);
+                zeroCopy = true;
+                inChannel.position(bytesCopied);
+            }
+            bytesCopied += ChannelCopier.copy(inChannel, outChannel, digest, cancellable);
+        }
+        return new ImportResult(target, bytesCopied, System.nanoTime() - start, zeroCopy);
+    }
+
+    /**
+     * Dedup pre-key of a provider uri, from its size and modified time. Null if the provider
+     * doesn't report both, then the content has to be hashed to be recognized
+     */
+    @Nullable
+    static String preKey(Context context, Uri source) {
+        long size = -1;
+        long modified = -1;
+        try (Cursor cursor = context.getContentResolver().query(source, null, null, null, null)) {
+            if (cursor == null || !cursor.moveToFirst()) {
+                return null;
+            }
+            int sizeColumn = cursor.getColumnIndex(OpenableColumns.SIZE);
+            if (sizeColumn != -1 && !cursor.isNull(sizeColumn)) {
+                size = cursor.getLong(sizeColumn);
+            }
+            int lastModifiedColumn = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+            int dateModifiedColumn = cursor.getColumnIndex(MediaStore.Images.Media.DATE_MODIFIED);
+            if (lastModifiedColumn != -1 && !cursor.isNull(lastModifiedColumn)) {
+                modified = cursor.getLong(lastModifiedColumn);
+            } else if (dateModifiedColumn != -1 && !cursor.isNull(dateModifiedColumn)) {
+                modified = TimeUnit.SECONDS.toMillis(cursor.getLong(dateModifiedColumn));
+            }
+        } catch (RuntimeException e) {
+            // some providers throw for queries they don't support
+            return null;
+        }
+        if (size <= 0 || modified <= 0) {
+            return null;
+        }
+        return DedupIndex.preKey(source.toString(), size, modified);
+    }
+
+    @NonNull
+    static String extensionFor(Context context, Uri source) {
+        ContentResolver resolver = context.getContentResolver();
+        String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(resolver.getType(source));
+        return extension != null ? extension : "jpg";
+    }
+}
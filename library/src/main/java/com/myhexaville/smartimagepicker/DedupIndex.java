@@ -0,0 +1,242 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers what picked content was already processed into. Content is identified by the
+ * SHA-256 of its bytes, computed while it's imported. A pre-key (provider uri, size and modified
+ * time) maps to the content hash, so an unchanged image picked again isn't even read.
+ * Outputs are disk cache keys per content hash and processing variant, the cache may have evicted
+ * them since, callers check.
+ * <p>
+ * Every change is appended to a journal file that is replayed on first use and rewritten when most
+ * of it is redundant. Both maps keep only the most recently used {@link #MAX_ENTRIES}.
+ */
+final class DedupIndex {
+    static final int MAX_ENTRIES = 512;
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final String PRE_KEY = "PRE";
+    private static final String OUTPUT = "OUT";
+    private static final String REMOVE = "DEL";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Map<File, DedupIndex> openIndexes = new HashMap<>();
+
+    private final File journalFile;
+    private final Map<String, String> preKeys = new LruMap();
+    private final Map<String, String> outputs = new LruMap();
+    private Writer journalWriter;
+    private int journalLines;
+    private boolean opened;
+
+    private static final class LruMap extends LinkedHashMap<String, String> {
+        LruMap() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    }
+
+    private DedupIndex(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * One instance per file, the journal has to have a single writer
+     */
+    static DedupIndex open(File journalFile) {
+        synchronized (openIndexes) {
+            DedupIndex index = openIndexes.get(journalFile);
+            if (index == null) {
+                index = new DedupIndex(journalFile);
+                openIndexes.put(journalFile, index);
+            }
+            return index;
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Pre-keys are hashed too, provider uris can be long and have spaces
+     */
+    static String preKey(String providerId, long size, long modified) {
+        MessageDigest digest = newDigest();
+        digest.update((providerId + '\n' + size + '\n' + modified).getBytes(Charset.forName("UTF-8")));
+        return toHex(digest.digest());
+    }
+
+    synchronized String getContentHash(String preKey) throws IOException {
+        ensureOpened();
+        return preKeys.get(preKey);
+    }
+
+    synchronized void putContentHash(String preKey, String contentHash) throws IOException {
+        ensureOpened();
+        if (contentHash.equals(preKeys.put(preKey, contentHash))) {
+            return;
+        }
+        append(PRE_KEY + ' ' + preKey + ' ' + contentHash);
+    }
+
+    /**
+     * Disk cache key the content was processed into for {@code variant}, or null
+     */
+    synchronized String getOutput(String contentHash, String variant) throws IOException {
+        ensureOpened();
+        return outputs.get(outputKey(contentHash, variant));
+    }
+
+    synchronized void putOutput(String contentHash, String variant, String cacheKey) throws IOException {
+        ensureOpened();
+        String key = outputKey(contentHash, variant);
+        if (cacheKey.equals(outputs.put(key, cacheKey))) {
+            return;
+        }
+        append(OUTPUT + ' ' + key + ' ' + cacheKey);
+    }
+
+    synchronized void removeOutput(String contentHash, String variant) throws IOException {
+        ensureOpened();
+        String key = outputKey(contentHash, variant);
+        if (outputs.remove(key) != null) {
+            append(REMOVE + ' ' + key);
+        }
+    }
+
+    synchronized void close() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+        opened = false;
+        preKeys.clear();
+        outputs.clear();
+    }
+
+    private static String outputKey(String contentHash, String variant) {
+        return contentHash + '/' + variant;
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void ensureOpened() throws IOException {
+        if (opened) {
+            return;
+        }
+        journalFile.getParentFile().mkdirs();
+        boolean corrupt = false;
+        if (journalFile.exists()) {
+            try {
+                readJournal();
+            } catch (IOException | RuntimeException e) {
+                corrupt = true;
+                preKeys.clear();
+                outputs.clear();
+            }
+        }
+        opened = true;
+        if (corrupt || !journalFile.exists() || isRedundant()) {
+            rebuildJournal();
+        } else {
+            journalWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(journalFile, true), US_ASCII));
+        }
+    }
+
+    private void readJournal() throws IOException {
+        journalLines = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journalFile), US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (PRE_KEY.equals(parts[0]) && parts.length == 3) {
+                    preKeys.put(parts[1], parts[2]);
+                } else if (OUTPUT.equals(parts[0]) && parts.length == 3) {
+                    outputs.put(parts[1], parts[2]);
+                } else if (REMOVE.equals(parts[0]) && parts.length == 2) {
+                    outputs.remove(parts[1]);
+                } else {
+                    throw new IOException("Unexpected journal line: " + line);
+                }
+                journalLines++;
+            }
+        }
+    }
+
+    private boolean isRedundant() {
+        return journalLines > 2 * MAX_ENTRIES && journalLines > 2 * (preKeys.size() + outputs.size());
+    }
+
+    /**
+     * Writes only the live entries, eldest first so replaying keeps the order, swapped in with a rename
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+        File tempFile = new File(journalFile.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tempFile), US_ASCII))) {
+            for (Map.Entry<String, String> entry : preKeys.entrySet()) {
+                writer.write(PRE_KEY + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+            for (Map.Entry<String, String> entry : outputs.entrySet()) {
+                writer.write(OUTPUT + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+        }
+        if (!tempFile.renameTo(journalFile)) {
+            journalFile.delete();
+            if (!tempFile.renameTo(journalFile)) {
+                throw new IOException("Couldn't replace " + journalFile);
+            }
+        }
+        journalLines = preKeys.size() + outputs.size();
+        journalWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFile, true), US_ASCII));
+    }
+
+    private void append(String line) throws IOException {
+        journalWriter.write(line);
+        journalWriter.write('\n');
+        journalWriter.flush();
+        journalLines++;
+        if (isRedundant()) {
+            rebuildJournal();
+        }
+    }
+}
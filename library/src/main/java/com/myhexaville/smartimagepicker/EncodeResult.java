@@ -0,0 +1,96 @@
+package com.myhexaville.smartimagepicker;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the encode stage wrote and how long it took
+ */
+public class EncodeResult {
+    private final File file;
+    private final OutputFormat format;
+    private final int width, height;
+    private final int quality;
+    private final long bytes;
+    private final boolean fitsMaxSize;
+    private final int attempts;
+    private final long durationNanos;
+
+    EncodeResult(File file, OutputFormat format, int width, int height, int quality, long bytes,
+                 boolean fitsMaxSize, int attempts, long durationNanos) {
+        this.file = file;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.quality = quality;
+        this.bytes = bytes;
+        this.fitsMaxSize = fitsMaxSize;
+        this.attempts = attempts;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Null if the output was only streamed to an {@link OutputSink} without keeping a file
+     */
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Quality that was chosen, lower than requested if it had to fit max file size
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * False if even the lowest quality was bigger than max file size
+     */
+    public boolean fitsMaxSize() {
+        return fitsMaxSize;
+    }
+
+    /**
+     * Number of times the bitmap was compressed, more than 1 only when searching for max file size
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodeResult{" +
+                "file=" + file +
+                ", format=" + format +
+                ", size=" + width + "x" + height +
+                ", quality=" + quality +
+                ", bytes=" + bytes +
+                ", fitsMaxSize=" + fitsMaxSize +
+                ", attempts=" + attempts +
+                ", durationMs=" + TimeUnit.NANOSECONDS.toMillis(durationNanos) +
+                '}';
+    }
+}
@@ -0,0 +1,268 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Reads the EXIF orientation and embedded thumbnail of a JPEG from its header segments only,
+ * it stops at the first APP1 Exif segment or at the start of scan, so pixel data is never read.
+ * Free of Android types so it can run on a plain JVM.
+ */
+final class ExifParser {
+    static final int ORIENTATION_NORMAL = 1;
+    static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    static final int ORIENTATION_ROTATE_180 = 3;
+    static final int ORIENTATION_FLIP_VERTICAL = 4;
+    static final int ORIENTATION_TRANSPOSE = 5;
+    static final int ORIENTATION_ROTATE_90 = 6;
+    static final int ORIENTATION_TRANSVERSE = 7;
+    static final int ORIENTATION_ROTATE_270 = 8;
+
+    static final int MARKER_SOI = 0xD8;
+    static final int MARKER_EOI = 0xD9;
+    static final int MARKER_SOS = 0xDA;
+    static final int MARKER_APP1 = 0xE1;
+
+    static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+    static final int TYPE_SHORT = 3;
+    private static final int IFD_ENTRY_SIZE = 12;
+    static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private ExifParser() {
+    }
+
+    /**
+     * Returns one of the ORIENTATION constants, {@link #ORIENTATION_NORMAL} if the stream isn't
+     * a JPEG or has no orientation tag. Doesn't close the stream
+     */
+    static int readOrientation(InputStream in) throws IOException {
+        byte[] segment = readExifSegment(in);
+        return segment != null ? parseOrientation(segment) : ORIENTATION_NORMAL;
+    }
+
+    /**
+     * Returns the APP1 Exif segment, starting with the "Exif" header, or null if there's none.
+     * Doesn't close the stream
+     */
+    static byte[] readExifSegment(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readUnsignedByte() != 0xFF || data.readUnsignedByte() != MARKER_SOI) {
+                return null;
+            }
+            while (true) {
+                int marker = readMarker(data);
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    return null;
+                }
+                int length = data.readUnsignedShort() - 2;
+                if (length < 0) {
+                    return null;
+                }
+                if (marker == MARKER_APP1 && length > EXIF_HEADER.length) {
+                    byte[] segment = new byte[length];
+                    data.readFully(segment);
+                    if (isExifSegment(segment)) {
+                        return segment;
+                    }
+                } else {
+                    skipFully(data, length);
+                }
+            }
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    static boolean isSwapped(int orientation) {
+        return orientation >= ORIENTATION_TRANSPOSE && orientation <= ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * Each orientation as the 2x2 matrix {a, b, c, d} mapping (x, y) to (ax + by, cx + dy), indexed by
+     * value. Same convention as BitmapDecoder.applyOrientation, y points down and 90 is clockwise
+     */
+    private static final int[][] ORIENTATION_MATRICES = {
+            null,
+            {1, 0, 0, 1},
+            {-1, 0, 0, 1},
+            {-1, 0, 0, -1},
+            {1, 0, 0, -1},
+            {0, 1, 1, 0},
+            {0, -1, 1, 0},
+            {0, -1, -1, 0},
+            {0, 1, -1, 0}
+    };
+
+    /**
+     * Orientation that applies {@code first} and then {@code then}, e.g. the EXIF orientation
+     * followed by a rotation the user asked for
+     */
+    static int compose(int first, int then) {
+        int[] f = ORIENTATION_MATRICES[valid(first)];
+        int[] t = ORIENTATION_MATRICES[valid(then)];
+        int[] product = {
+                t[0] * f[0] + t[1] * f[2], t[0] * f[1] + t[1] * f[3],
+                t[2] * f[0] + t[3] * f[2], t[2] * f[1] + t[3] * f[3]
+        };
+        for (int orientation = ORIENTATION_NORMAL; orientation <= ORIENTATION_ROTATE_270; orientation++) {
+            if (Arrays.equals(ORIENTATION_MATRICES[orientation], product)) {
+                return orientation;
+            }
+        }
+        throw new AssertionError("Orientations aren't closed under composition");
+    }
+
+    private static int valid(int orientation) {
+        return orientation >= ORIENTATION_NORMAL && orientation <= ORIENTATION_ROTATE_270
+                ? orientation
+                : ORIENTATION_NORMAL;
+    }
+
+    static boolean isExifSegment(byte[] segment) {
+        if (segment.length < EXIF_HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < EXIF_HEADER.length; i++) {
+            if (segment[i] != EXIF_HEADER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next marker, skipping 0xFF fill bytes
+     */
+    static int readMarker(DataInputStream data) throws IOException {
+        int b = data.readUnsignedByte();
+        while (b != 0xFF) {
+            b = data.readUnsignedByte();
+        }
+        while (b == 0xFF) {
+            b = data.readUnsignedByte();
+        }
+        return b;
+    }
+
+    static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Finds the orientation tag in IFD0 of an Exif segment
+     */
+    static int parseOrientation(byte[] segment) {
+        int tiffStart = EXIF_HEADER.length;
+        try {
+            ByteBuffer buffer = tiffBuffer(segment, tiffStart);
+            if (buffer == null) {
+                return ORIENTATION_NORMAL;
+            }
+            int ifdOffset = tiffStart + buffer.getInt(tiffStart + 4);
+            int entry = findEntry(buffer, ifdOffset, TAG_ORIENTATION);
+            if (entry >= 0) {
+                int value = readValue(buffer, entry);
+                return value >= ORIENTATION_NORMAL && value <= ORIENTATION_ROTATE_270
+                        ? value
+                        : ORIENTATION_NORMAL;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            // truncated or broken exif
+        }
+        return ORIENTATION_NORMAL;
+    }
+
+    /**
+     * Returns the JPEG thumbnail from IFD1 of an Exif segment, or null if there's none. It's stored
+     * in the same orientation as the main image
+     */
+    static byte[] parseThumbnail(byte[] segment) {
+        int tiffStart = EXIF_HEADER.length;
+        try {
+            ByteBuffer buffer = tiffBuffer(segment, tiffStart);
+            if (buffer == null) {
+                return null;
+            }
+            int ifd0 = tiffStart + buffer.getInt(tiffStart + 4);
+            int entryCount = buffer.getShort(ifd0) & 0xFFFF;
+            int nextIfd = buffer.getInt(ifd0 + 2 + entryCount * IFD_ENTRY_SIZE);
+            if (nextIfd <= 0) {
+                return null;
+            }
+            int ifd1 = tiffStart + nextIfd;
+            int offsetEntry = findEntry(buffer, ifd1, TAG_THUMBNAIL_OFFSET);
+            int lengthEntry = findEntry(buffer, ifd1, TAG_THUMBNAIL_LENGTH);
+            if (offsetEntry < 0 || lengthEntry < 0) {
+                return null;
+            }
+            int offset = tiffStart + readValue(buffer, offsetEntry);
+            int length = readValue(buffer, lengthEntry);
+            // offset + length can overflow, compare against what's left after the offset
+            if (length < 4 || offset < tiffStart || offset > segment.length || length > segment.length - offset
+                    || (segment[offset] & 0xFF) != 0xFF || (segment[offset + 1] & 0xFF) != MARKER_SOI) {
+                return null;
+            }
+            return Arrays.copyOfRange(segment, offset, offset + length);
+        } catch (IndexOutOfBoundsException e) {
+            // truncated or broken exif
+            return null;
+        }
+    }
+
+    /**
+     * Position of the {@code tag} entry in the IFD at {@code ifdOffset}, -1 if it's not there
+     */
+    private static int findEntry(ByteBuffer buffer, int ifdOffset, int tag) {
+        int entryCount = buffer.getShort(ifdOffset) & 0xFFFF;
+        for (int i = 0; i < entryCount; i++) {
+            int entry = ifdOffset + 2 + i * IFD_ENTRY_SIZE;
+            if ((buffer.getShort(entry) & 0xFFFF) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static int readValue(ByteBuffer buffer, int entry) {
+        int type = buffer.getShort(entry + 2) & 0xFFFF;
+        return type == TYPE_SHORT
+                ? buffer.getShort(entry + 8) & 0xFFFF
+                : buffer.getInt(entry + 8);
+    }
+
+    /**
+     * Buffer over the segment in the TIFF byte order, or null if there's no valid TIFF header
+     */
+    static ByteBuffer tiffBuffer(byte[] segment, int tiffStart) {
+        ByteBuffer buffer = ByteBuffer.wrap(segment);
+        int byteOrder = buffer.getShort(tiffStart);
+        if (byteOrder == 0x4949) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (byteOrder == 0x4D4D) {
+            buffer.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            return null;
+        }
+        if (buffer.getShort(tiffStart + 2) != 42) {
+            return null;
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,324 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ClipData;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.GridLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Grid of the device's images, newest first, used instead of the system chooser with
+ * {@link ImagePicker#setWithInAppGallery(boolean)}. Images are loaded a page at a time as the
+ * grid scrolls and the cells only ever show provider thumbnails, never full images.
+ * Returns the picked uris the way gallery apps do, one as the data or several as clip data,
+ * or {@link #ACTION_OPEN_CAMERA} when the camera cell is tapped.
+ */
+public class GalleryActivity extends AppCompatActivity {
+    private static final String TAG = "GalleryActivity";
+    static final String EXTRA_MAX_IMAGES = "com.myhexaville.smartimagepicker.extra.MAX_IMAGES";
+    static final String EXTRA_INCLUDE_CAMERA = "com.myhexaville.smartimagepicker.extra.INCLUDE_CAMERA";
+    static final String ACTION_OPEN_CAMERA = "com.myhexaville.smartimagepicker.action.OPEN_CAMERA";
+    private static final int MIN_CELL_SIZE_DP = 96;
+    private static final int CELL_SPACING_DP = 2;
+    private static final int VIEW_TYPE_CAMERA = 0;
+    private static final int VIEW_TYPE_IMAGE = 1;
+    private static final int MENU_DONE = 1;
+    private static final float UNSELECTED_ALPHA = 1f;
+    private static final float SELECTED_ALPHA = 0.5f;
+    /**
+     * Next page is loaded when the last visible cell is this close to the end
+     */
+    private static final int PRELOAD_DISTANCE = MediaStorePager.PAGE_SIZE / 4;
+
+    private int maxImages;
+    private boolean includeCamera;
+    private MediaStorePager pager;
+    private ThumbnailLoader thumbnailLoader;
+    private GalleryAdapter adapter;
+    private GridLayoutManager layoutManager;
+    private boolean loadingPage;
+    private boolean destroyed;
+    private long[] ids = new long[0];
+    private int[] orientations = new int[0];
+    private int count;
+    private final List<Long> selectedIds = new ArrayList<>();
+
+    static Intent newIntent(Context context, int maxImages, boolean includeCamera) {
+        return new Intent(context, GalleryActivity.class)
+                .putExtra(EXTRA_MAX_IMAGES, maxImages)
+                .putExtra(EXTRA_INCLUDE_CAMERA, includeCamera);
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setTitle(R.string.gallery_title);
+        maxImages = Math.max(1, getIntent().getIntExtra(EXTRA_MAX_IMAGES, 1));
+        includeCamera = getIntent().getBooleanExtra(EXTRA_INCLUDE_CAMERA, false);
+
+        float density = getResources().getDisplayMetrics().density;
+        int screenWidth = getResources().getDisplayMetrics().widthPixels;
+        int spacing = Math.round(CELL_SPACING_DP * density);
+        int spanCount = Math.max(3, (int) (screenWidth / (MIN_CELL_SIZE_DP * density)));
+        int cellSize = screenWidth / spanCount;
+
+        pager = new MediaStorePager(getContentResolver(), MediaStorePager.PAGE_SIZE);
+        thumbnailLoader = new ThumbnailLoader(this, cellSize);
+        adapter = new GalleryAdapter(cellSize, spacing);
+        layoutManager = new GridLayoutManager(this, spanCount);
+
+        RecyclerView grid = new RecyclerView(this);
+        grid.setLayoutManager(layoutManager);
+        grid.setHasFixedSize(true);
+        // a fling recycles whole rows at once, keep enough cells around to not inflate new ones
+        grid.getRecycledViewPool().setMaxRecycledViews(VIEW_TYPE_IMAGE, spanCount * 4);
+        grid.setAdapter(adapter);
+        grid.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PRELOAD_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
+        setContentView(grid);
+        loadNextPage();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        if (maxImages > 1) {
+            menu.add(Menu.NONE, MENU_DONE, Menu.NONE, R.string.gallery_done)
+                    .setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
+        }
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        MenuItem done = menu.findItem(MENU_DONE);
+        if (done != null) {
+            done.setEnabled(!selectedIds.isEmpty());
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == MENU_DONE) {
+            finishWithSelection();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        thumbnailLoader.clear();
+    }
+
+    /**
+     * Queries on the background thread, one page at a time
+     */
+    private void loadNextPage() {
+        if (loadingPage || pager.isExhausted()) {
+            return;
+        }
+        loadingPage = true;
+        PickerExecutors.background().execute(() -> {
+            MediaStorePager.Page page;
+            try {
+                page = pager.loadNextPage();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "loadNextPage: couldn't query images", e);
+                page = new MediaStorePager.Page(new long[0], new int[0], 0);
+            }
+            MediaStorePager.Page loaded = page;
+            PickerExecutors.postToMainThread(() -> onPageLoaded(loaded));
+        });
+    }
+
+    private void onPageLoaded(MediaStorePager.Page page) {
+        loadingPage = false;
+        if (destroyed || page.count == 0) {
+            return;
+        }
+        int newCount = count + page.count;
+        if (newCount > ids.length) {
+            int capacity = Math.max(newCount, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            orientations = Arrays.copyOf(orientations, capacity);
+        }
+        System.arraycopy(page.ids, 0, ids, count, page.count);
+        System.arraycopy(page.orientations, 0, orientations, count, page.count);
+        int start = adapter.getItemCount();
+        count = newCount;
+        adapter.notifyItemRangeInserted(start, page.count);
+    }
+
+    private void onImageClicked(long id, ImageView view) {
+        if (maxImages == 1) {
+            selectedIds.add(id);
+            finishWithSelection();
+            return;
+        }
+        if (selectedIds.remove(Long.valueOf(id))) {
+            view.setAlpha(UNSELECTED_ALPHA);
+        } else if (selectedIds.size() < maxImages) {
+            selectedIds.add(id);
+            view.setAlpha(SELECTED_ALPHA);
+        }
+        invalidateOptionsMenu();
+    }
+
+    private void finishWithSelection() {
+        if (selectedIds.isEmpty()) {
+            return;
+        }
+        Intent result = new Intent();
+        Uri first = imageUri(selectedIds.get(0));
+        if (selectedIds.size() == 1) {
+            result.setData(first);
+        } else {
+            ClipData clipData = ClipData.newRawUri(null, first);
+            for (int i = 1; i < selectedIds.size(); i++) {
+                clipData.addItem(new ClipData.Item(imageUri(selectedIds.get(i))));
+            }
+            result.setClipData(clipData);
+        }
+        setResult(RESULT_OK, result);
+        finish();
+    }
+
+    private void finishWithCamera() {
+        setResult(RESULT_OK, new Intent(ACTION_OPEN_CAMERA));
+        finish();
+    }
+
+    private static Uri imageUri(long id) {
+        return ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
+    }
+
+    private final class GalleryAdapter extends RecyclerView.Adapter<CellHolder> {
+        private final int cellSize;
+        private final int spacing;
+
+        GalleryAdapter(int cellSize, int spacing) {
+            this.cellSize = cellSize;
+            this.spacing = spacing;
+            setHasStableIds(true);
+        }
+
+        private int offset() {
+            return includeCamera ? 1 : 0;
+        }
+
+        @Override
+        public int getItemCount() {
+            return count + offset();
+        }
+
+        @Override
+        public long getItemId(int position) {
+            // media ids are positive, the camera cell gets one they never use
+            return includeCamera && position == 0 ? -1 : ids[position - offset()];
+        }
+
+        @Override
+        public int getItemViewType(int position) {
+            return includeCamera && position == 0 ? VIEW_TYPE_CAMERA : VIEW_TYPE_IMAGE;
+        }
+
+        @NonNull
+        @Override
+        public CellHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            ImageView view = new ImageView(parent.getContext());
+            view.setLayoutParams(new RecyclerView.LayoutParams(cellSize, cellSize));
+            view.setPadding(spacing / 2, spacing / 2, spacing / 2, spacing / 2);
+            if (viewType == VIEW_TYPE_CAMERA) {
+                view.setScaleType(ImageView.ScaleType.CENTER);
+                view.setImageResource(android.R.drawable.ic_menu_camera);
+                view.setBackgroundColor(Color.DKGRAY);
+            } else {
+                view.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            }
+            CellHolder holder = new CellHolder(view);
+            if (viewType == VIEW_TYPE_CAMERA) {
+                view.setOnClickListener(v -> finishWithCamera());
+            }
+            return holder;
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull CellHolder holder, int position) {
+            if (holder.getItemViewType() == VIEW_TYPE_CAMERA) {
+                return;
+            }
+            int index = position - offset();
+            long id = ids[index];
+            holder.bind(id, orientations[index]);
+        }
+
+        @Override
+        public void onViewRecycled(@NonNull CellHolder holder) {
+            holder.unbind();
+        }
+    }
+
+    private final class CellHolder extends RecyclerView.ViewHolder implements ThumbnailLoader.Callback {
+        private final ImageView view;
+        private ThumbnailLoader.Request request;
+        private long id;
+
+        CellHolder(ImageView view) {
+            super(view);
+            this.view = view;
+            view.setOnClickListener(v -> onImageClicked(id, view));
+        }
+
+        void bind(long id, int orientation) {
+            unbind();
+            this.id = id;
+            view.setAlpha(selectedIds.contains(id) ? SELECTED_ALPHA : UNSELECTED_ALPHA);
+            Bitmap cached = thumbnailLoader.getCached(id);
+            if (cached != null) {
+                view.setImageBitmap(cached);
+            } else {
+                view.setImageDrawable(null);
+                request = thumbnailLoader.load(id, orientation, this);
+            }
+        }
+
+        void unbind() {
+            if (request != null) {
+                request.cancel();
+                request = null;
+            }
+        }
+
+        @Override
+        public void onThumbnailLoaded(Bitmap bitmap) {
+            request = null;
+            view.setImageBitmap(bitmap);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads size, type and orientation of an image from its container header: JPEG SOF and Exif
+ * segments, PNG IHDR, GIF screen descriptor and the WebP VP8, VP8L or VP8X chunk. Stops as soon as
+ * it has them, so at most the header segments are read. Free of Android types so it can run on a plain JVM.
+ */
+final class HeaderProbe {
+    static final String MIME_JPEG = "image/jpeg";
+    static final String MIME_PNG = "image/png";
+    static final String MIME_GIF = "image/gif";
+    static final String MIME_WEBP = "image/webp";
+
+    private static final long PNG_SIGNATURE = 0x89504E470D0A1A0AL;
+    private static final int PNG_IHDR = 0x49484452;
+    private static final int RIFF = 0x52494646;
+    private static final int WEBP = 0x57454250;
+    private static final int VP8 = 0x56503820;
+    private static final int VP8L = 0x5650384C;
+    private static final int VP8X = 0x56503858;
+
+    /**
+     * What the header says, width and height are as stored, before orientation
+     */
+    static final class Header {
+        final String mimeType;
+        final int width, height;
+        final int orientation;
+
+        Header(String mimeType, int width, int height, int orientation) {
+            this.mimeType = mimeType;
+            this.width = width;
+            this.height = height;
+            this.orientation = orientation;
+        }
+    }
+
+    private HeaderProbe() {
+    }
+
+    /**
+     * Returns null if the format isn't one of these or the header is broken. Doesn't close the stream
+     */
+    static Header read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        try {
+            int first = data.readUnsignedShort();
+            if (first == (0xFF00 | ExifParser.MARKER_SOI)) {
+                return readJpeg(data);
+            }
+            int second = data.readUnsignedShort();
+            int magic = first << 16 | second;
+            if (magic == (int) (PNG_SIGNATURE >>> 32)) {
+                return data.readInt() == (int) PNG_SIGNATURE ? readPng(data) : null;
+            }
+            if (magic == RIFF) {
+                return readWebp(data);
+            }
+            if (magic == 0x47494638) {
+                return readGif(data);
+            }
+            return null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Goes through the segments until a start of frame, reading the Exif segment on the way.
+     * Exif usually comes first, it's not looked for after the frame header
+     */
+    private static Header readJpeg(DataInputStream data) throws IOException {
+        int orientation = ExifParser.ORIENTATION_NORMAL;
+        while (true) {
+            int marker = ExifParser.readMarker(data);
+            if (marker == ExifParser.MARKER_SOS || marker == ExifParser.MARKER_EOI) {
+                return null;
+            }
+            int length = data.readUnsignedShort() - 2;
+            if (length < 0) {
+                return null;
+            }
+            if (isStartOfFrame(marker)) {
+                if (length < 5) {
+                    return null;
+                }
+                data.readUnsignedByte();
+                int height = data.readUnsignedShort();
+                int width = data.readUnsignedShort();
+                return width > 0 && height > 0 ? new Header(MIME_JPEG, width, height, orientation) : null;
+            }
+            if (marker == ExifParser.MARKER_APP1 && orientation == ExifParser.ORIENTATION_NORMAL) {
+                byte[] segment = new byte[length];
+                data.readFully(segment);
+                if (ExifParser.isExifSegment(segment)) {
+                    orientation = ExifParser.parseOrientation(segment);
+                }
+            } else {
+                ExifParser.skipFully(data, length);
+            }
+        }
+    }
+
+    /**
+     * SOF0..SOF15 without DHT (C4), JPG (C8) and DAC (CC)
+     */
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static Header readPng(DataInputStream data) throws IOException {
+        data.readInt();
+        if (data.readInt() != PNG_IHDR) {
+            return null;
+        }
+        int width = data.readInt();
+        int height = data.readInt();
+        return width > 0 && height > 0 ? new Header(MIME_PNG, width, height, ExifParser.ORIENTATION_NORMAL) : null;
+    }
+
+    private static Header readGif(DataInputStream data) throws IOException {
+        data.readUnsignedShort();
+        int width = readLittleEndianShort(data);
+        int height = readLittleEndianShort(data);
+        return width > 0 && height > 0 ? new Header(MIME_GIF, width, height, ExifParser.ORIENTATION_NORMAL) : null;
+    }
+
+    /**
+     * Only the first chunk after the RIFF header is read, it's always one of the three
+     */
+    private static Header readWebp(DataInputStream data) throws IOException {
+        data.readInt();
+        if (data.readInt() != WEBP) {
+            return null;
+        }
+        int chunk = data.readInt();
+        data.readInt();
+        int width;
+        int height;
+        if (chunk == VP8) {
+            // 3 byte frame tag, then the 9d 01 2a start code
+            ExifParser.skipFully(data, 3);
+            if (data.readUnsignedByte() != 0x9D || data.readUnsignedByte() != 0x01 || data.readUnsignedByte() != 0x2A) {
+                return null;
+            }
+            width = readLittleEndianShort(data) & 0x3FFF;
+            height = readLittleEndianShort(data) & 0x3FFF;
+        } else if (chunk == VP8L) {
+            if (data.readUnsignedByte() != 0x2F) {
+                return null;
+            }
+            int bits = Integer.reverseBytes(data.readInt());
+            width = (bits & 0x3FFF) + 1;
+            height = ((bits >>> 14) & 0x3FFF) + 1;
+        } else if (chunk == VP8X) {
+            ExifParser.skipFully(data, 4);
+            width = readLittleEndian24(data) + 1;
+            height = readLittleEndian24(data) + 1;
+        } else {
+            return null;
+        }
+        return width > 0 && height > 0 ? new Header(MIME_WEBP, width, height, ExifParser.ORIENTATION_NORMAL) : null;
+    }
+
+    private static int readLittleEndianShort(DataInputStream data) throws IOException {
+        return Short.reverseBytes(data.readShort()) & 0xFFFF;
+    }
+
+    private static int readLittleEndian24(DataInputStream data) throws IOException {
+        return data.readUnsignedByte() | data.readUnsignedByte() << 8 | data.readUnsignedByte() << 16;
+    }
+}
@@ -0,0 +1,457 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.regex.Pattern;
+
+/**
+ * Files written by the picker (camera captures, imports, crop outputs) live in one namespace
+ * directory owned by this cache. Every change is appended to a journal, so opening the cache
+ * replays the journal instead of listing the directory. Entries over the byte/entry budget are
+ * evicted in least recently used order on the trim executor.
+ * <p>
+ * A file is created with {@link #newFile(String)}, and counts towards the budget after
+ * {@link #commit(String)}. Files being written in this process are never evicted, and neither are
+ * files committed or read while the cache is held with {@link #hold()}, so a batch doesn't evict its
+ * own earlier images before they're delivered. Uncommitted files left by a previous process are
+ * kept, so a capture can still be picked up after process death. They don't count towards the byte
+ * budget and are evicted in least recently used order like committed files.
+ */
+final class ImageDiskCache {
+    static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TEMP = "journal.tmp";
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-zA-Z0-9._-]{1,120}");
+    private static final String DIRTY = "DIRTY";
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final int REDUNDANT_OPS_COMPACT_THRESHOLD = 2000;
+
+    static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+    static final int DEFAULT_MAX_ENTRIES = 16;
+
+    private static final Map<File, ImageDiskCache> openCaches = new HashMap<>();
+
+    private final File directory;
+    private final File journalFile;
+    private final Executor trimExecutor;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Runnable trimTask = this::trim;
+
+    private long maxBytes;
+    private int maxEntries;
+    private long size;
+    private int redundantOps;
+    private Writer journalWriter;
+    private boolean opened;
+    private boolean trimScheduled;
+    private int holds;
+
+    private static final class Entry {
+        final String key;
+        long length;
+        boolean clean;
+        boolean editing;
+        /**
+         * Committed or read while the cache was held
+         */
+        boolean pinned;
+
+        Entry(String key) {
+            this.key = key;
+        }
+    }
+
+    private ImageDiskCache(File directory, long maxBytes, int maxEntries, Executor trimExecutor) {
+        this.directory = directory;
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.trimExecutor = trimExecutor;
+    }
+
+    /**
+     * Returns the cache for {@code directory}, there's only one instance per directory because
+     * the journal has to have a single writer. The journal is replayed lazily on first use.
+     * An already open cache keeps its budget, change it with {@link #setBudget(long, int)}.
+     */
+    static ImageDiskCache open(File directory, long maxBytes, int maxEntries, Executor trimExecutor) {
+        synchronized (openCaches) {
+            ImageDiskCache cache = openCaches.get(directory);
+            if (cache == null) {
+                cache = new ImageDiskCache(directory, maxBytes, maxEntries, trimExecutor);
+                openCaches.put(directory, cache);
+            }
+            return cache;
+        }
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    synchronized void setBudget(long maxBytes, int maxEntries) {
+        if (maxBytes <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("Budget must be positive: " + maxBytes + " bytes, " + maxEntries + " entries");
+        }
+        if (this.maxBytes == maxBytes && this.maxEntries == maxEntries) {
+            return;
+        }
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        scheduleTrim();
+    }
+
+    synchronized long size() throws IOException {
+        ensureOpened();
+        return size;
+    }
+
+    synchronized int entryCount() throws IOException {
+        ensureOpened();
+        return entries.size();
+    }
+
+    /**
+     * Replays the journal now instead of on first use, so the first pick doesn't wait for it
+     */
+    synchronized void load() throws IOException {
+        ensureOpened();
+    }
+
+    /**
+     * Path of {@code key} inside the cache directory, doesn't touch the journal
+     */
+    File file(String key) {
+        return new File(directory, key);
+    }
+
+    /**
+     * Registers {@code key} as being written and returns its file, the file itself isn't created
+     */
+    synchronized File newFile(String key) throws IOException {
+        validateKey(key);
+        ensureOpened();
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            entries.put(key, entry);
+        } else if (entry.clean) {
+            size -= entry.length;
+            entry.clean = false;
+        }
+        entry.editing = true;
+        appendToJournal(DIRTY + ' ' + key);
+        return file(key);
+    }
+
+    /**
+     * Marks {@code key} as complete, returns false if its file doesn't exist
+     */
+    synchronized boolean commit(String key) throws IOException {
+        validateKey(key);
+        ensureOpened();
+        File file = file(key);
+        if (!file.exists()) {
+            abort(key);
+            return false;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            entries.put(key, entry);
+        } else if (entry.clean) {
+            size -= entry.length;
+            redundantOps++;
+        }
+        entry.length = file.length();
+        entry.clean = true;
+        entry.editing = false;
+        entry.pinned = holds > 0;
+        size += entry.length;
+        appendToJournal(CLEAN + ' ' + key + ' ' + entry.length);
+        scheduleTrim();
+        return true;
+    }
+
+    synchronized void abort(String key) throws IOException {
+        remove(key);
+    }
+
+    /**
+     * Returns the committed file for {@code key} and marks it as recently used, or null
+     */
+    synchronized File get(String key) throws IOException {
+        validateKey(key);
+        ensureOpened();
+        Entry entry = entries.get(key);
+        if (entry == null || !entry.clean) {
+            return null;
+        }
+        File file = file(key);
+        if (!file.exists()) {
+            remove(key);
+            return null;
+        }
+        if (holds > 0) {
+            entry.pinned = true;
+        }
+        redundantOps++;
+        appendToJournal(READ + ' ' + key);
+        return file;
+    }
+
+    /**
+     * Until the matching {@link #release()}, entries committed or read aren't evicted. The cache
+     * may grow over its budget meanwhile, it's trimmed once every hold is released
+     */
+    synchronized void hold() {
+        holds++;
+    }
+
+    synchronized void release() {
+        if (holds == 0) {
+            throw new IllegalStateException("Cache isn't held");
+        }
+        if (--holds > 0) {
+            return;
+        }
+        for (Entry entry : entries.values()) {
+            entry.pinned = false;
+        }
+        scheduleTrim();
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    synchronized boolean remove(String key) throws IOException {
+        validateKey(key);
+        ensureOpened();
+        Entry entry = entries.remove(key);
+        file(key).delete();
+        if (entry == null) {
+            return false;
+        }
+        if (entry.clean) {
+            size -= entry.length;
+        }
+        redundantOps++;
+        appendToJournal(REMOVE + ' ' + key);
+        return true;
+    }
+
+    /**
+     * Deletes every entry that isn't being written right now
+     */
+    synchronized void clear() throws IOException {
+        ensureOpened();
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.editing) {
+                continue;
+            }
+            iterator.remove();
+            evict(entry);
+        }
+        scheduleTrim();
+    }
+
+    synchronized void close() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+        opened = false;
+        entries.clear();
+        size = 0;
+    }
+
+    private void scheduleTrim() {
+        if (!trimScheduled && needsTrim()) {
+            trimScheduled = true;
+            trimExecutor.execute(trimTask);
+        }
+    }
+
+    private boolean needsTrim() {
+        return size > maxBytes
+                || entries.size() > maxEntries
+                || (redundantOps >= REDUNDANT_OPS_COMPACT_THRESHOLD && redundantOps >= entries.size());
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits its budget, and compacts the
+     * journal if most of it is redundant. Runs on the trim executor.
+     */
+    synchronized void trim() {
+        trimScheduled = false;
+        try {
+            ensureOpened();
+            Iterator<Entry> iterator = entries.values().iterator();
+            while ((size > maxBytes || entries.size() > maxEntries) && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.editing || entry.pinned) {
+                    continue;
+                }
+                iterator.remove();
+                evict(entry);
+            }
+            if (redundantOps >= REDUNDANT_OPS_COMPACT_THRESHOLD && redundantOps >= entries.size()) {
+                rebuildJournal();
+            }
+        } catch (IOException ignored) {
+            // the journal is rebuilt on the next open
+        }
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void evict(Entry entry) throws IOException {
+        file(entry.key).delete();
+        if (entry.clean) {
+            size -= entry.length;
+        }
+        redundantOps++;
+        appendToJournal(REMOVE + ' ' + entry.key);
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void ensureOpened() throws IOException {
+        if (opened) {
+            return;
+        }
+        directory.mkdirs();
+        boolean corrupt = false;
+        if (journalFile.exists()) {
+            try {
+                readJournal();
+            } catch (IOException | RuntimeException e) {
+                corrupt = true;
+            }
+        }
+        opened = true;
+        if (corrupt || !journalFile.exists()) {
+            rebuildJournal();
+        } else {
+            journalWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(journalFile, true), US_ASCII));
+        }
+    }
+
+    private void readJournal() throws IOException {
+        int lineCount = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(journalFile), US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                readJournalLine(line);
+                lineCount++;
+            }
+        }
+        redundantOps = lineCount - entries.size();
+    }
+
+    private void readJournalLine(String line) throws IOException {
+        String[] parts = line.split(" ");
+        if (parts.length < 2) {
+            throw new IOException("Unexpected journal line: " + line);
+        }
+        String op = parts[0];
+        String key = parts[1];
+        Entry entry = entries.get(key);
+        switch (op) {
+            case DIRTY:
+                if (entry == null) {
+                    entry = new Entry(key);
+                    entries.put(key, entry);
+                } else if (entry.clean) {
+                    size -= entry.length;
+                    entry.clean = false;
+                }
+                break;
+            case CLEAN:
+                if (parts.length != 3) {
+                    throw new IOException("Unexpected journal line: " + line);
+                }
+                if (entry == null) {
+                    entry = new Entry(key);
+                    entries.put(key, entry);
+                } else if (entry.clean) {
+                    size -= entry.length;
+                }
+                entry.length = Long.parseLong(parts[2]);
+                entry.clean = true;
+                size += entry.length;
+                break;
+            case READ:
+                // the access order of the map already moved it to the tail
+                break;
+            case REMOVE:
+                if (entry != null) {
+                    entries.remove(key);
+                    if (entry.clean) {
+                        size -= entry.length;
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unexpected journal line: " + line);
+        }
+    }
+
+    /**
+     * Writes the current state as a fresh journal, swapped in with a rename
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+            journalWriter = null;
+        }
+        File tempFile = new File(directory, JOURNAL_FILE_TEMP);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tempFile), US_ASCII))) {
+            for (Entry entry : entries.values()) {
+                if (entry.clean) {
+                    writer.write(CLEAN + ' ' + entry.key + ' ' + entry.length + '\n');
+                } else {
+                    writer.write(DIRTY + ' ' + entry.key + '\n');
+                }
+            }
+        }
+        if (!tempFile.renameTo(journalFile)) {
+            journalFile.delete();
+            if (!tempFile.renameTo(journalFile)) {
+                throw new IOException("Couldn't replace " + journalFile);
+            }
+        }
+        redundantOps = 0;
+        journalWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFile, true), US_ASCII));
+    }
+
+    private void appendToJournal(String line) throws IOException {
+        journalWriter.write(line);
+        journalWriter.write('\n');
+        journalWriter.flush();
+    }
+
+    private static void validateKey(String key) {
+        if (!KEY_PATTERN.matcher(key).matches() || key.startsWith(JOURNAL_FILE)) {
+            throw new IllegalArgumentException("Invalid cache key: " + key);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compresses a bitmap into a file. When there's a max file size, every attempt is compressed
+ * into the same in-memory buffer from the same bitmap, and only the chosen one is written out.
+ * Streaming to a sink never holds the whole output, attempts are only counted and the chosen
+ * quality is compressed again straight into the sink.
+ */
+final class ImageEncoder {
+    static final int MIN_QUALITY = 10;
+
+    private final Bitmap bitmap;
+    private final OutputFormat format;
+    private final ByteArrayOutputStream buffer;
+    private final Cancellable cancellable;
+    private int bufferQuality = -1;
+
+    private ImageEncoder(Bitmap bitmap, OutputFormat format, Cancellable cancellable) {
+        this.bitmap = bitmap;
+        this.format = format;
+        this.cancellable = cancellable;
+        // jpeg output is usually well under a byte per pixel
+        this.buffer = new ByteArrayOutputStream(Math.max(32 * 1024, bitmap.getWidth() * bitmap.getHeight() / 4));
+    }
+
+    /**
+     * @param maxBytes    max output size, 0 for no limit
+     * @param cancellable checked before every compression attempt
+     */
+    @NonNull
+    static EncodeResult encode(Bitmap bitmap, OutputFormat format, int quality, long maxBytes, File target,
+                               Cancellable cancellable) throws IOException {
+        long start = System.nanoTime();
+        ImageEncoder encoder = new ImageEncoder(bitmap, format, cancellable);
+        int chosenQuality = quality;
+        boolean fits = true;
+        int attempts = 1;
+        if (maxBytes > 0 && format.isLossy()) {
+            QualitySearch.Result result = QualitySearch.search(
+                    Math.min(MIN_QUALITY, quality), quality, maxBytes, encoder::compress);
+            chosenQuality = result.quality;
+            fits = result.fits;
+            attempts = result.attempts;
+            if (encoder.bufferQuality != chosenQuality) {
+                encoder.compress(chosenQuality);
+                attempts++;
+            }
+        } else {
+            encoder.compress(quality);
+            fits = maxBytes <= 0 || encoder.buffer.size() <= maxBytes;
+        }
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            encoder.buffer.writeTo(out);
+        }
+        return new EncodeResult(target, format, bitmap.getWidth(), bitmap.getHeight(), chosenQuality,
+                encoder.buffer.size(), fits, attempts, System.nanoTime() - start);
+    }
+
+    /**
+     * Compresses into {@code sink} in {@link ChunkedChannelOutputStream#CHUNK_SIZE} chunks, and into
+     * {@code target} too if it's not null. Doesn't close the sink
+     */
+    @NonNull
+    static EncodeResult encode(Bitmap bitmap, OutputFormat format, int quality, long maxBytes, @Nullable File target,
+                               WritableByteChannel sink, Cancellable cancellable) throws IOException {
+        long start = System.nanoTime();
+        int chosenQuality = quality;
+        boolean fits = true;
+        int attempts = 1;
+        if (maxBytes > 0 && format.isLossy()) {
+            QualitySearch.Result result = QualitySearch.search(Math.min(MIN_QUALITY, quality), quality, maxBytes,
+                    attemptQuality -> countCompressed(bitmap, format, attemptQuality, cancellable));
+            chosenQuality = result.quality;
+            fits = result.fits;
+            attempts = result.attempts + 1;
+        }
+        long bytes;
+        try (FileOutputStream out = target != null ? new FileOutputStream(target) : null;
+             ChunkedChannelOutputStream stream = new ChunkedChannelOutputStream(
+                     sink, out != null ? out.getChannel() : null, cancellable)) {
+            compress(bitmap, format, chosenQuality, stream, cancellable);
+            stream.close();
+            bytes = stream.getBytesWritten();
+        }
+        if (maxBytes > 0 && !format.isLossy()) {
+            fits = bytes <= maxBytes;
+        }
+        return new EncodeResult(target, format, bitmap.getWidth(), bitmap.getHeight(), chosenQuality,
+                bytes, fits, attempts, System.nanoTime() - start);
+    }
+
+    private static long countCompressed(Bitmap bitmap, OutputFormat format, int quality,
+                                        Cancellable cancellable) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream();
+        compress(bitmap, format, quality, counter, cancellable);
+        return counter.count;
+    }
+
+    private static void compress(Bitmap bitmap, OutputFormat format, int quality, OutputStream out,
+                                 Cancellable cancellable) throws IOException {
+        cancellable.throwIfCancelled();
+        if (!bitmap.compress(format.compressFormat, format.compressQuality(quality), out)) {
+            throw new IOException("Couldn't compress bitmap as " + format);
+        }
+    }
+
+    /**
+     * Drops the bytes, only the size of an attempt matters
+     */
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+    }
+
+    private long compress(int quality) throws IOException {
+        cancellable.throwIfCancelled();
+        buffer.reset();
+        if (!bitmap.compress(format.compressFormat, format.compressQuality(quality), buffer)) {
+            throw new IOException("Couldn't compress bitmap as " + format);
+        }
+        bufferQuality = quality;
+        return buffer.size();
+    }
+}
@@ -0,0 +1,82 @@
+package com.myhexaville.smartimagepicker;
+
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+/**
+ * Size, type and orientation of an image, read by {@link ImageProbe} without decoding it.
+ */
+public class ImageInfo {
+    private final Uri uri;
+    private final int width, height;
+    private final String mimeType;
+    private final long byteSize;
+    private final int orientation;
+    private final boolean fromHeader;
+
+    ImageInfo(Uri uri, int width, int height, String mimeType, long byteSize, int orientation, boolean fromHeader) {
+        this.uri = uri;
+        this.width = width;
+        this.height = height;
+        this.mimeType = mimeType;
+        this.byteSize = byteSize;
+        this.orientation = orientation;
+        this.fromHeader = fromHeader;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    /**
+     * Width as displayed, after the EXIF orientation
+     */
+    public int getWidth() {
+        return ExifParser.isSwapped(orientation) ? height : width;
+    }
+
+    /**
+     * Height as displayed, after the EXIF orientation
+     */
+    public int getHeight() {
+        return ExifParser.isSwapped(orientation) ? width : height;
+    }
+
+    @Nullable
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * Size of the file, -1 if the provider doesn't know it
+     */
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    /**
+     * EXIF orientation, 1..8 same as ExifInterface.ORIENTATION_*, 1 for formats without it
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * False if the format isn't one the probe parses and the platform decoder read the bounds
+     */
+    public boolean isFromHeader() {
+        return fromHeader;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageInfo{" +
+                "uri=" + uri +
+                ", size=" + getWidth() + "x" + getHeight() +
+                ", mimeType=" + mimeType +
+                ", byteSize=" + byteSize +
+                ", orientation=" + orientation +
+                ", fromHeader=" + fromHeader +
+                '}';
+    }
+}
@@ -3,8 +3,15 @@ package com.myhexaville.smartimagepicker;
 import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.arch.lifecycle.Lifecycle;
+import android.arch.lifecycle.LifecycleObserver;
+import android.arch.lifecycle.LifecycleOwner;
+import android.arch.lifecycle.OnLifecycleEvent;
+import android.content.ClipData;
 import android.content.Intent;
+import android.content.Context;
 import android.content.pm.PackageManager;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Parcelable;
 import android.provider.MediaStore;
@@ -22,60 +29,515 @@ import com.theartofdev.edmodo.cropper.CropImageView;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static android.app.Activity.RESULT_OK;
 import static android.content.pm.PackageManager.PERMISSION_GRANTED;
-import static com.theartofdev.edmodo.cropper.CropImage.CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE;
-import static com.theartofdev.edmodo.cropper.CropImage.PICK_IMAGE_CHOOSER_REQUEST_CODE;
-import static com.theartofdev.edmodo.cropper.CropImage.getGalleryIntents;
 
 /**
- * Usage: Create new instance, call {@link #choosePicture(boolean)} or {@link #openCamera()}
+ * Usage: Create new instance, optionally call {@link #prewarm()} when the screen opens,
+ * call {@link #choosePicture(boolean)} or {@link #openCamera()}
  * override {@link Activity#onActivityResult}, call {@link #handleActivityResult(int, int, Intent)} in it
  * override {@link Activity#onRequestPermissionsResult}, call {@link #handlePermission(int, int[])} in it
  * get picked file with {@link #getImageFile()}
+ * or call {@link #setWithImageDecode(int, int, OnImageDecodedListener)} to get a bitmap decoded off the main thread
+ * or call {@link #setWithMultipleSelection(int, OnBatchPickedListener)} to pick several images at once
+ * or call {@link #setWithImageCompression(OutputFormat, int, int, int)} to re-encode the picked image
+ * or use the {@link PickHandle} returned by {@link #choosePicture(boolean)} to follow or cancel the pick.
+ * Picks still running when the activity or fragment is destroyed are cancelled.
+ * Screens with several image slots create one picker per slot with
+ * {@link #ImagePicker(Activity, Fragment, OnImagePickedListener, int)}, forward every result to
+ * all of them, and each picker only handles its own
  * <p>
  * If calling from Fragment, override {@link Activity#onActivityResult(int, int, Intent)}
  * and call {@link Fragment#onActivityResult(int, int, Intent)} for your fragment to delegate result
  */
 public class ImagePicker implements ImagePickerContract {
     private static final String TAG = "ImagePicker";
-    private static final int CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE_WITH_CAMERA = 100;
-    private static final int CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE_WITHOUT_CAMERA = 101;
+    /**
+     * Where camera photos went before the disk cache, only deleted now
+     */
+    private static final String LEGACY_IMAGES_DIR_NAME = "images";
+    private static final AtomicBoolean legacyImagesDeleted = new AtomicBoolean();
 
-    private static String currentCameraFileName = "";
     private OnImagePickedListener listener;
     private Activity activity;
     private Fragment fragment;
 
     private File imageFile;
-    private int aspectRatioX, aspectRatioY;
-    private boolean withCrop;
+    private final PickOptions options = new PickOptions();
+    private OnImageDecodedListener decodedListener;
+    private OnImagePreviewListener previewListener;
+    private OnImageImportedListener importedListener;
+    private OnBatchPickedListener batchListener;
+    private OnImageProcessedListener processedListener;
+    private final PickerSession session;
+    private final ImageDiskCache diskCache;
+    private final MemoryPressure memoryPressure;
+    private PickResult currentResult;
+    private PickHandle currentPick;
+    private Executor executor;
+    private PickResult previewTarget;
+    private long activityResultNanos;
+    private long permissionRequestNanos;
+    private PickerStage activityStage;
+    private long activityStartNanos;
+    private long cropStartNanos;
+    private final AtomicReference<CameraCapture> preparedCameraCapture = new AtomicReference<>();
+    private RecentImagesPrefetcher prefetcher;
+    private boolean destroyed;
+
+    /**
+     * Camera output file created ahead of time, with the intent that writes to it
+     */
+    private static final class CameraCapture {
+        final String fileName;
+        final Intent intent;
+
+        CameraCapture(String fileName, Intent intent) {
+            this.fileName = fileName;
+            this.intent = intent;
+        }
+    }
 
     public ImagePicker(Activity activity, @Nullable Fragment fragment, OnImagePickedListener listener) {
+        this(activity, fragment, listener, PickerSession.DEFAULT_SESSION);
+    }
+
+    /**
+     * Picker for one of several image slots of a screen, {@code session} is 1..1000 and has to be the
+     * same for the slot after the activity is recreated. Each session has its own cache directory,
+     * request codes and pending camera capture, so pickers of different slots don't touch each other's files
+     */
+    public ImagePicker(Activity activity, @Nullable Fragment fragment, OnImagePickedListener listener, int session) {
         this.activity = activity;
         this.fragment = fragment;
         this.listener = listener;
+        this.session = PickerSession.get(activity, session);
+        this.diskCache = ImageDiskCache.open(
+                this.session.directory,
+                ImageDiskCache.DEFAULT_MAX_BYTES,
+                ImageDiskCache.DEFAULT_MAX_ENTRIES,
+                PickerExecutors.background());
+        this.memoryPressure = MemoryPressure.get(activity);
+        openDiskCache(activity.getFilesDir());
+        this.session.whenRestored(this::onSessionRestored);
+        LifecycleOwner owner = fragment != null
+                ? fragment
+                : activity instanceof LifecycleOwner ? (LifecycleOwner) activity : null;
+        if (owner != null) {
+            owner.getLifecycle().addObserver(new HostObserver(owner));
+        }
+    }
+
+    /**
+     * Cancels the running pick when the host is destroyed, so its work stops
+     * and the host isn't referenced by background tasks anymore. The camera file made by
+     * {@link #prewarm()} is deleted too, the recreated host prewarms its own
+     */
+    private class HostObserver implements LifecycleObserver {
+        private final LifecycleOwner owner;
+
+        HostObserver(LifecycleOwner owner) {
+            this.owner = owner;
+        }
+
+        @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+        void onDestroy() {
+            owner.getLifecycle().removeObserver(this);
+            destroyed = true;
+            if (currentPick != null) {
+                currentPick.cancel();
+            }
+            if (prefetcher != null) {
+                prefetcher.stop();
+            }
+            CameraCapture capture = preparedCameraCapture.getAndSet(null);
+            if (capture != null) {
+                abortInBackground(capture.fileName);
+            }
+        }
     }
 
     @SuppressWarnings("UnusedReturnValue")
     @Override
     public ImagePicker setWithImageCrop(int aspectRatioX, int aspectRatioY) {
-        withCrop = true;
-        this.aspectRatioX = aspectRatioX;
-        this.aspectRatioY = aspectRatioY;
+        options.withCrop = true;
+        options.autoCrop = false;
+        options.aspectRatioX = aspectRatioX;
+        options.aspectRatioY = aspectRatioY;
+        return this;
+    }
+
+    /**
+     * Crops the largest centered {@code aspectRatioX:aspectRatioY} rectangle without showing the
+     * crop activity. Only that rectangle is decoded, works with multiple selection too
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithAutoCrop(int aspectRatioX, int aspectRatioY) {
+        if (aspectRatioX <= 0 || aspectRatioY <= 0) {
+            throw new IllegalArgumentException("Aspect ratio must be positive: " + aspectRatioX + ":" + aspectRatioY);
+        }
+        options.withCrop = false;
+        options.autoCrop = true;
+        options.aspectRatioX = aspectRatioX;
+        options.aspectRatioY = aspectRatioY;
+        return this;
+    }
+
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithImageDecode(int maxWidth, int maxHeight, OnImageDecodedListener listener) {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxWidth + "x" + maxHeight);
+        }
+        options.decodeMaxWidth = maxWidth;
+        options.decodeMaxHeight = maxHeight;
+        this.decodedListener = listener;
+        return this;
+    }
+
+    /**
+     * Delivers a preview no bigger than {@code maxSize} before the picked image is processed, from
+     * the EXIF or media provider thumbnail when there is one. Single picks only
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithPreview(int maxSize, OnImagePreviewListener listener) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+        }
+        options.previewMaxSize = maxSize;
+        this.previewListener = listener;
+        return this;
+    }
+
+    /**
+     * Re-encodes the picked (and cropped) image to {@code format}, scaled down to fit
+     * {@code maxWidth x maxHeight}. {@link #getImageFile()} and the picked uri point to the
+     * encoded file, see {@link PickResult#getEncodeResult()} for its size and encode time
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithImageCompression(OutputFormat format, int maxWidth, int maxHeight, int quality) {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxWidth + "x" + maxHeight);
+        }
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be 0..100: " + quality);
+        }
+        options.outputFormat = format;
+        options.encodeMaxWidth = maxWidth;
+        options.encodeMaxHeight = maxHeight;
+        options.quality = quality;
+        return this;
+    }
+
+    /**
+     * Lowers the quality of {@link #setWithImageCompression} as little as possible for the file
+     * to fit {@code maxKilobytes}. Has no effect without compression or with lossless WEBP
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithMaxFileSize(int maxKilobytes) {
+        if (maxKilobytes <= 0) {
+            throw new IllegalArgumentException("Max file size must be positive: " + maxKilobytes);
+        }
+        options.maxOutputBytes = maxKilobytes * 1024L;
+        return this;
+    }
+
+    /**
+     * Runs {@code transforms} on the picked image in their order, after the crop activity or auto
+     * crop and before compression. The library plans the chain so it takes one region decode, one
+     * draw and one encode however many steps there are, on the worker pool, see
+     * {@link PickResult#getTransformResult()} for the plan and timings. Without compression the
+     * output is a JPEG. Call it without transforms to turn it off
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithTransforms(Transform... transforms) {
+        options.transforms = transforms.length > 0
+                ? Collections.unmodifiableList(new ArrayList<>(Arrays.asList(transforms)))
+                : null;
+        return this;
+    }
+
+    /**
+     * Removes GPS position, device and other metadata from picked and captured JPEGs before they're
+     * delivered, keeping only {@code kept}. The file is rewritten without decoding it, so it's fast
+     * and the pixels don't change, see {@link PickResult#getStripResult()}. Cropped, compressed and
+     * transformed outputs are re-encoded and never have metadata
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithMetadataStripping(boolean strip, JpegMetadata... kept) {
+        if (!strip) {
+            options.keptMetadata = null;
+            return this;
+        }
+        Set<JpegMetadata> keptMetadata = EnumSet.noneOf(JpegMetadata.class);
+        keptMetadata.addAll(Arrays.asList(kept));
+        options.keptMetadata = Collections.unmodifiableSet(keptMetadata);
+        return this;
+    }
+
+    /**
+     * Computes a BlurHash placeholder of the output, see {@link PickResult#getPlaceholder()}, from a
+     * decode no bigger than 32x32 pixels, in a few milliseconds. {@code componentsX x componentsY}
+     * is its detail, 1..9 each, 4x3 suits most photos. 0x0 turns it off
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithPlaceholder(int componentsX, int componentsY) {
+        boolean off = componentsX == 0 && componentsY == 0;
+        if (!off && (componentsX < 1 || componentsX > BlurHashEncoder.MAX_COMPONENTS
+                || componentsY < 1 || componentsY > BlurHashEncoder.MAX_COMPONENTS)) {
+            throw new IllegalArgumentException("Components must be 1.." + BlurHashEncoder.MAX_COMPONENTS + ": "
+                    + componentsX + "x" + componentsY);
+        }
+        options.placeholderComponentsX = componentsX;
+        options.placeholderComponentsY = componentsY;
+        return this;
+    }
+
+    /**
+     * Encodes every rendition, e.g. a thumbnail, a feed size and an archival size, into its own file,
+     * see {@link PickResult#getRenditions()}. The picked (and cropped) image is decoded once for all
+     * of them, each one is scaled from the next bigger one and they're encoded in parallel.
+     * Call it without renditions to turn it off
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithRenditions(Rendition... renditions) {
+        Set<String> names = new HashSet<>();
+        for (Rendition rendition : renditions) {
+            if (!names.add(rendition.getName())) {
+                throw new IllegalArgumentException("Rendition names must be unique: " + rendition.getName());
+            }
+        }
+        options.renditions = renditions.length > 0
+                ? Collections.unmodifiableList(new ArrayList<>(Arrays.asList(renditions)))
+                : null;
+        return this;
+    }
+
+    /**
+     * Lets the user select up to {@code maxImages} images in the gallery app. Every image is imported
+     * and decoded in parallel and delivered to {@code listener}, {@link OnImagePickedListener}
+     * isn't called. The crop activity isn't supported for multiple images and is skipped,
+     * use {@link #setWithAutoCrop(int, int)} instead
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithMultipleSelection(int maxImages, OnBatchPickedListener listener) {
+        if (maxImages < 1) {
+            throw new IllegalArgumentException("maxImages must be positive: " + maxImages);
+        }
+        options.maxImages = maxImages;
+        this.batchListener = listener;
+        return this;
+    }
+
+    /**
+     * Opens the library's own image grid instead of the system chooser. It pages through the
+     * media provider and shows its thumbnails, so it opens instantly on big libraries and
+     * supports {@link #setWithMultipleSelection(int, OnBatchPickedListener)} on every device.
+     * Asks for the storage permission
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithInAppGallery(boolean inAppGallery) {
+        options.inAppGallery = inAppGallery;
+        return this;
+    }
+
+    /**
+     * Decoded bitmaps are kept in {@code memoryCache}, and decodes reuse its pooled bitmaps.
+     * Share one cache between pickers to get hits when the same image is reopened
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithMemoryCache(BitmapMemoryCache memoryCache) {
+        options.memoryCache = memoryCache;
+        memoryPressure.register(memoryCache);
+        return this;
+    }
+
+    /**
+     * Camera captures, imported and cropped images are kept in the session's cache directory,
+     * least recently used ones are deleted when there's more than {@code maxBytes} or {@code maxEntries}.
+     * The budget is shared by all pickers of the session
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithDiskCacheBudget(long maxBytes, int maxEntries) {
+        diskCache.setBudget(maxBytes, maxEntries);
+        return this;
+    }
+
+    /**
+     * Streams the final bytes of every picked image into the channel {@code sink} opens, in fixed size
+     * chunks, so an upload doesn't read a file back into memory. Compressed output is streamed while
+     * it's compressed and written to a file too only if {@code keepFile} is set, otherwise
+     * {@link #getImageFile()} is the file it was compressed from. Other output is streamed from its file
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithOutputSink(OutputSink sink, boolean keepFile) {
+        options.outputSink = sink;
+        options.keepStreamedFile = keepFile;
+        return this;
+    }
+
+    /**
+     * Recognizes gallery images that were picked before, by a hash of their bytes computed while
+     * they're imported, and by provider uri, size and modified time so unchanged ones aren't read again.
+     * If the earlier output is still in the disk cache it's delivered right away, see
+     * {@link PickResult#isDuplicate()}. Imports always go through a buffer when it's on
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithDeduplication(boolean enabled) {
+        options.dedupIndex = enabled ? DedupIndex.open(session.dedupIndexFile) : null;
+        return this;
+    }
+
+    /**
+     * Watches the device for new images and gets the newest {@code count} ready before they're
+     * picked: their previews, and while the device is charging their import, crop and compression,
+     * which picks find through {@link #setWithDeduplication(boolean)}. Runs on the background thread
+     * and pauses under memory pressure, in power save mode and in doze. 0 turns it off. Stopped
+     * when the host is destroyed, or call it with 0 for hosts that aren't lifecycle owners
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setWithRecentImagesPrefetch(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count can't be negative: " + count);
+        }
+        if (prefetcher != null) {
+            prefetcher.stop();
+            prefetcher = null;
+        }
+        if (count > 0) {
+            prefetcher = new RecentImagesPrefetcher(activity, count, memoryPressure, new PrefetchHost());
+            prefetcher.start();
+        }
+        return this;
+    }
+
+    private class PrefetchHost implements RecentImagesPrefetcher.Host {
+        @Override
+        public int getPreviewMaxSize() {
+            return previewListener != null ? options.previewMaxSize : 0;
+        }
+
+        /**
+         * Without deduplication a pick can't find the prefetched output, only the preview is kept.
+         * The crop activity's rectangle isn't known yet, then only the import is done
+         */
+        @Override
+        public void prefetchOutput(Uri imageUri) throws IOException {
+            if (options.dedupIndex == null) {
+                return;
+            }
+            PickOptions prefetchOptions = options.copy();
+            prefetchOptions.applyMemoryLevel(memoryPressure.getLevel());
+            prefetchOptions.forPrefetch();
+            PickProcessor processor = new PickProcessor(activity, diskCache, prefetchOptions, new PickHandle());
+            if (options.withCrop && !options.autoCrop) {
+                processor.importContent(imageUri);
+                return;
+            }
+            PickResult result = processor.process(imageUri, 0);
+            if (result.error instanceof IOException) {
+                throw (IOException) result.error;
+            } else if (result.error instanceof RuntimeException) {
+                throw (RuntimeException) result.error;
+            }
+        }
+    }
+
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setOnImageImportedListener(OnImageImportedListener listener) {
+        this.importedListener = listener;
         return this;
     }
 
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setOnImageProcessedListener(OnImageProcessedListener listener) {
+        this.processedListener = listener;
+        return this;
+    }
+
+    /**
+     * Reports how long each {@link PickerStage} of a pick took, with byte counts and errors,
+     * nothing is measured for the listener when it isn't set
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setMetricsListener(PickerMetricsListener listener) {
+        options.metricsListener = listener;
+        return this;
+    }
+
+    /**
+     * Runs import, crop, encode and decode on {@code executor} instead of the library's threads.
+     * Images of a batch are processed in parallel only if the executor has several threads
+     */
+    @SuppressWarnings("UnusedReturnValue")
+    @Override
+    public ImagePicker setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Resolves gallery and camera intents and creates the next camera output file on a background
+     * thread, so {@link #choosePicture(boolean)} and {@link #openCamera()} don't do it on tap.
+     * Call it when the screen with the pick button opens
+     */
+    @Override
+    public void prewarm() {
+        if (!memoryPressure.getLevel().allowsPrefetch()) {
+            return;
+        }
+        Context context = activity.getApplicationContext();
+        PickerExecutors.background().execute(() -> {
+            PickerIntentCache.getGalleryIntents(context);
+            if (PickerIntentCache.hasCameraApp(context) && preparedCameraCapture.get() == null) {
+                CameraCapture capture = prepareCameraCapture();
+                reserveCameraFile(capture.fileName);
+                if (!preparedCameraCapture.compareAndSet(null, capture)) {
+                    abortInBackground(capture.fileName);
+                }
+            }
+        });
+    }
+
     @SuppressLint("NewApi")
     @Override
-    public void choosePicture(boolean includeCamera) {
+    public PickHandle choosePicture(boolean includeCamera) {
+        PickHandle pick = startPick();
         if (needToAskPermissions()) {
             String[] neededPermissions = getNeededPermissions();
             int requestCode = includeCamera
-                    ? CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE_WITH_CAMERA
-                    : CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE_WITHOUT_CAMERA;
+                    ? session.chooserWithCameraPermissionRequestCode
+                    : session.chooserPermissionRequestCode;
+            permissionRequestNanos = System.nanoTime();
             if (fragment != null) {
                 fragment.requestPermissions(neededPermissions, requestCode);
             } else {
@@ -84,28 +546,89 @@ public class ImagePicker implements ImagePickerContract {
         } else {
             startImagePickerActivity(includeCamera);
         }
+        return pick;
     }
 
     @SuppressLint("NewApi")
     @Override
-    public void openCamera() {
+    public PickHandle openCamera() {
+        PickHandle pick = startPick();
         if (needToAskPermissions()) {
+            permissionRequestNanos = System.nanoTime();
             if (fragment != null) {
-                fragment.requestPermissions(getNeededPermissions(), CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE);
+                fragment.requestPermissions(getNeededPermissions(), session.cameraPermissionRequestCode);
             } else {
-                activity.requestPermissions(getNeededPermissions(), CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE);
-            }
-        } else {
-            Intent takePictureIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
-            Intent cameraIntent = getCameraIntent();
-            if (takePictureIntent.resolveActivity(activity.getPackageManager()) != null) {
-                activity.startActivityForResult(cameraIntent, PICK_IMAGE_CHOOSER_REQUEST_CODE);
+                activity.requestPermissions(getNeededPermissions(), session.cameraPermissionRequestCode);
             }
+        } else if (PickerIntentCache.hasCameraApp(activity)) {
+            startCameraActivity();
+        }
+        return pick;
+    }
+
+    /**
+     * The pick started by the last {@link #choosePicture(boolean)} or {@link #openCamera()}, or
+     * the one created for a result that came back after the app was restarted
+     */
+    @Nullable
+    @Override
+    public PickHandle getCurrentPick() {
+        return currentPick;
+    }
+
+    /**
+     * Cancels the previous pick if it's still running
+     */
+    private PickHandle startPick() {
+        if (currentPick != null) {
+            currentPick.cancel();
+        }
+        currentPick = new PickHandle();
+        return currentPick;
+    }
+
+    private PickHandle ensurePick() {
+        if (currentPick == null || currentPick.isDone()) {
+            currentPick = new PickHandle();
+        }
+        return currentPick;
+    }
+
+    private void cancelPick() {
+        if (currentPick != null) {
+            currentPick.cancel();
         }
     }
 
+    /**
+     * Cancels the running pick and deletes every file of this picker's session, e.g. when the form
+     * the slot belongs to was submitted. Files of other sessions aren't touched
+     */
+    @Override
+    public void clearSession() {
+        cancelPick();
+        abortPendingCameraFile();
+        CameraCapture capture = preparedCameraCapture.getAndSet(null);
+        if (capture != null) {
+            abortInBackground(capture.fileName);
+        }
+        PickerExecutors.background().execute(() -> {
+            PickJournal.delete(session.directory);
+            try {
+                diskCache.clear();
+            } catch (IOException e) {
+                Log.e(TAG, "clearSession: couldn't clear session " + session.id, e);
+            }
+        });
+    }
+
+    /**
+     * File of the last delivered image, null until an image is picked in this session. After a
+     * restart it's the file delivered before the process died, or null if it was evicted. The
+     * session's journal is read in the background, so right after a restart it's null for a moment
+     */
     @SuppressWarnings({"WeakerAccess", "unused"})
-    @NonNull
+    @Nullable
     @Override
     public File getImageFile() {
         return imageFile;
@@ -113,21 +636,28 @@ public class ImagePicker implements ImagePickerContract {
 
     @Override
     public void handlePermission(int requestCode, int[] grantResults) {
-        Log.d(TAG, "handlePermission: " + requestCode);
-        if (requestCode == CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE_WITH_CAMERA) {
+        if (session.isPermissionRequestCode(requestCode)) {
+            if (grantResults.length > 0 && grantResults[0] == PERMISSION_GRANTED) {
+                PickerMetrics.report(options.metricsListener, PickerStage.PERMISSION, permissionRequestNanos, 0, null);
+            } else {
+                PickerMetrics.reportCanceled(options.metricsListener, PickerStage.PERMISSION, permissionRequestNanos);
+            }
+            permissionRequestNanos = 0;
+        }
+        if (requestCode == session.chooserWithCameraPermissionRequestCode) {
             if (grantResults.length > 0 && grantResults[0] == PERMISSION_GRANTED) {
                 startImagePickerActivity(true);
             } else {
                 Toast.makeText(activity, R.string.canceling, Toast.LENGTH_SHORT).show();
             }
         }
-        if (requestCode == CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE_WITHOUT_CAMERA) {
+        if (requestCode == session.chooserPermissionRequestCode) {
             if (grantResults.length > 0 && grantResults[0] == PERMISSION_GRANTED) {
                 startImagePickerActivity(false);
             } else {
                 Toast.makeText(activity, R.string.canceling, Toast.LENGTH_SHORT).show();
             }
-        } else if (requestCode == CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE) {
+        } else if (requestCode == session.cameraPermissionRequestCode) {
             if (grantResults.length > 0 && grantResults[0] == PERMISSION_GRANTED) {
                 openCamera();
             } else {
@@ -136,28 +666,185 @@ public class ImagePicker implements ImagePickerContract {
         }
     }
 
+    /**
+     * Ignores results of other sessions' request codes
+     */
     @Override
     public void handleActivityResult(int resultCode, int requestCode, Intent data) {
+        if (requestCode != session.chooserRequestCode && requestCode != session.cropRequestCode) {
+            return;
+        }
+        // after a restart the journal tells which pick the result belongs to
+        session.whenRestored(() -> handleRestoredActivityResult(resultCode, requestCode, data));
+    }
+
+    private void handleRestoredActivityResult(int resultCode, int requestCode, Intent data) {
+        long start = PickerMetrics.begin(PickerStage.ACTIVITY_RESULT);
+        activityResultNanos = start;
+        PickJournal resumable = session.takeResumablePick();
+        if (resumable != null) {
+            resumePick(resumable);
+        }
+        // a successful result journals the returned uri until it's delivered
+        if (resultCode != RESULT_OK) {
+            journalPick(null, null, null);
+        }
         if (resultCode == RESULT_OK) {
-            Log.d(TAG, "handleActivityResult: 1");
-            if (requestCode == PICK_IMAGE_CHOOSER_REQUEST_CODE) {
-                Log.d(TAG, "handleActivityResult: 2");
-                handlePickedImageResult(data);
-            } else {
-                if (requestCode == CropImage.CROP_IMAGE_ACTIVITY_REQUEST_CODE) {
-                    handleCroppedImageResult(data);
+            if (requestCode == session.chooserRequestCode) {
+                PickerMetrics.report(options.metricsListener, activityStage, activityStartNanos, 0, null);
+                activityStartNanos = 0;
+                if (data != null && GalleryActivity.ACTION_OPEN_CAMERA.equals(data.getAction())) {
+                    startCameraActivity();
+                } else {
+                    long pickedStart = PickerMetrics.begin(PickerStage.PICKED_RESULT);
+                    handlePickedImageResult(data);
+                    PickerMetrics.end(options.metricsListener, PickerStage.PICKED_RESULT, pickedStart, 0, null);
                 }
+            } else {
+                handleCroppedImageResult(data);
             }
         } else {
-            Log.d(TAG, "handleActivityResult: " + resultCode);
-            if (resultCode == CropImage.CROP_IMAGE_ACTIVITY_RESULT_ERROR_CODE) {
-                Log.d(TAG, "onActivityResult: Image picker Error");
+            if (requestCode == session.chooserRequestCode) {
+                PickerMetrics.reportCanceled(options.metricsListener, activityStage, activityStartNanos);
+                activityStartNanos = 0;
+                abortPendingCameraFile();
+                cancelPick();
+            } else {
+                reportCropFailure(resultCode, data);
+                currentResult = null;
+                cancelPick();
+            }
+        }
+        PickerMetrics.end(options.metricsListener, PickerStage.ACTIVITY_RESULT, start, 0, null);
+    }
+
+    /**
+     * Continues a pick the killed process was waiting on an activity for, with the crop settings it
+     * was started with, which stay set until the picker is configured again. The session already
+     * restored the camera file, and a crop result gets the uri that was picked before the import
+     */
+    private void resumePick(PickJournal journal) {
+        options.withCrop = journal.withCrop;
+        options.autoCrop = journal.autoCrop;
+        options.aspectRatioX = journal.aspectRatioX;
+        options.aspectRatioY = journal.aspectRatioY;
+        if (journal.stage == PickerStage.CROP && journal.sourceUri != null && currentResult == null) {
+            currentResult = new PickResult(Uri.parse(journal.sourceUri), 0);
+        }
+    }
+
+    /**
+     * Restores the last delivered file, and processes the pick again if the killed process got the
+     * activity result but didn't deliver it. That waits for the main thread to run again, after the
+     * host configured the picker
+     */
+    private void onSessionRestored() {
+        if (imageFile == null) {
+            imageFile = session.getRestoredOutputFile();
+        }
+        PickerExecutors.postToMainThread(() -> {
+            if (destroyed || currentPick != null && !currentPick.isDone()) {
+                return;
             }
+            PickJournal returned = session.takeReturnedPick();
+            if (returned != null) {
+                resumeReturnedPick(returned);
+            }
+        });
+    }
+
+    /**
+     * Continues from the uri the activity returned, a crop result with the rectangle it returned
+     */
+    private void resumeReturnedPick(PickJournal journal) {
+        resumePick(journal);
+        activityResultNanos = System.nanoTime();
+        Uri sourceUri = Uri.parse(journal.sourceUri);
+        ensurePick();
+        if (journal.stage == PickerStage.CROP) {
+            Uri imageUri = Uri.fromFile(new File(journal.imagePath));
+            currentResult = new PickResult(sourceUri, 0);
+            currentResult.cropRect = new Rect(journal.cropRect[0], journal.cropRect[1],
+                    journal.cropRect[2], journal.cropRect[3]);
+            currentResult.cropOrientation = journal.cropOrientation;
+            journalReturnedPick(PickerStage.CROP, sourceUri, imageUri, currentResult);
+            deliverResult(imageUri);
+        } else {
+            journalReturnedPick(journal.stage, sourceUri, null, null);
+            handlePickedImage(sourceUri);
+        }
+    }
+
+    /**
+     * Writes where the pick is to the session's {@link PickJournal} on the background thread,
+     * {@code stage} is the activity it's waiting for, null if none
+     */
+    private void journalPick(@Nullable PickerStage stage, @Nullable Uri sourceUri, @Nullable Uri imageUri) {
+        writeJournal(newJournal(stage, sourceUri, imageUri));
+    }
+
+    /**
+     * Journals that {@code stage} returned {@code sourceUri}, kept until the result is delivered, so a
+     * pick killed while processing is processed again. {@code cropped} has the crop activity's rectangle
+     */
+    private void journalReturnedPick(PickerStage stage, Uri sourceUri, @Nullable Uri imageUri,
+                                     @Nullable PickResult cropped) {
+        PickJournal journal = newJournal(stage, sourceUri, imageUri);
+        journal.returned = true;
+        if (cropped != null && cropped.cropRect != null) {
+            Rect rect = cropped.cropRect;
+            journal.cropRect = new int[]{rect.left, rect.top, rect.right, rect.bottom};
+            journal.cropOrientation = cropped.cropOrientation;
         }
+        writeJournal(journal);
+    }
+
+    private PickJournal newJournal(@Nullable PickerStage stage, @Nullable Uri sourceUri, @Nullable Uri imageUri) {
+        PickJournal journal = new PickJournal();
+        journal.stage = stage;
+        journal.cameraFile = session.pendingCameraFile.get();
+        journal.sourceUri = sourceUri != null ? sourceUri.toString() : null;
+        journal.imagePath = imageUri != null ? imageUri.getPath() : null;
+        journal.withCrop = options.withCrop;
+        journal.autoCrop = options.autoCrop;
+        journal.aspectRatioX = options.aspectRatioX;
+        journal.aspectRatioY = options.aspectRatioY;
+        journal.outputPath = imageFile != null ? imageFile.getPath() : null;
+        return journal;
+    }
+
+    private void writeJournal(PickJournal journal) {
+        PickerExecutors.background().execute(() -> {
+            try {
+                journal.write(session.directory);
+            } catch (IOException e) {
+                Log.e(TAG, "journalPick: couldn't write journal of session " + session.id, e);
+            }
+        });
+    }
+
+    private void reportCropFailure(int resultCode, Intent data) {
+        if (resultCode == CropImage.CROP_IMAGE_ACTIVITY_RESULT_ERROR_CODE) {
+            CropImage.ActivityResult result = data != null ? CropImage.getActivityResult(data) : null;
+            Exception error = result != null ? result.getError() : null;
+            Log.e(TAG, "handleActivityResult: couldn't crop", error);
+            PickerMetrics.report(options.metricsListener, PickerStage.CROP, cropStartNanos, 0,
+                    error != null ? error : new IOException("Crop failed"));
+        } else {
+            PickerMetrics.reportCanceled(options.metricsListener, PickerStage.CROP, cropStartNanos);
+        }
+        cropStartNanos = 0;
+    }
+
+    /**
+     * The crop activity and the in-app gallery read images straight from storage
+     */
+    private boolean needsStoragePermission() {
+        return options.withCrop || options.inAppGallery;
     }
 
     private String[] getNeededPermissions() {
-        if (withCrop) {
+        if (needsStoragePermission()) {
             return new String[]{Manifest.permission.CAMERA, Manifest.permission.READ_EXTERNAL_STORAGE};
         } else {
             return new String[]{Manifest.permission.CAMERA};
@@ -165,7 +852,7 @@ public class ImagePicker implements ImagePickerContract {
     }
 
     private boolean needToAskPermissions() {
-        if (withCrop) {
+        if (needsStoragePermission()) {
             return ContextCompat.checkSelfPermission(activity, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED
                     || ContextCompat.checkSelfPermission(activity, Manifest.permission.READ_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED;
         } else {
@@ -173,86 +860,361 @@ public class ImagePicker implements ImagePickerContract {
         }
     }
 
+    /**
+     * The crop activity only returns the rectangle, the crop stage decodes just that part
+     */
     private void handleCroppedImageResult(Intent data) {
-        Log.d(TAG, "handleCroppedImageResult: ");
-        CropImage.ActivityResult result = CropImage.getActivityResult(data);
-        Uri croppedImageUri = result.getUri();
-        deletePreviouslyCroppedFiles(croppedImageUri);
-        imageFile = new File(croppedImageUri.getPath());
-        listener.onImagePicked(croppedImageUri);
+        PickerMetrics.report(options.metricsListener, PickerStage.CROP, cropStartNanos, 0, null);
+        cropStartNanos = 0;
+        CropImage.ActivityResult cropResult = CropImage.getActivityResult(data);
+        Uri imageUri = cropResult.getOriginalUri();
+        if (currentResult == null) {
+            currentResult = new PickResult(imageUri, 0);
+        }
+        currentResult.cropRect = cropResult.getCropRect();
+        currentResult.cropOrientation = RegionCropper.orientationForDegrees(cropResult.getRotation());
+        journalReturnedPick(PickerStage.CROP, currentResult.getSourceUri(), imageUri, currentResult);
+        deliverResult(imageUri);
     }
 
     @SuppressLint("NewApi")
     private void handlePickedImageResult(Intent data) {
         boolean isCamera = true;
-        if (data != null && data.getData() != null) {
+        if (data != null && (data.getData() != null || data.getClipData() != null)) {
             String action = data.getAction();
             isCamera = action != null && action.equals(MediaStore.ACTION_IMAGE_CAPTURE);
         }
-        Uri imageUri = isCamera || data.getData() == null ? getCameraFileUri(activity) : data.getData();
+        String cameraFile = session.pendingCameraFile.getAndSet(null);
         if (isCamera) {
-            deletePreviousCameraFiles();
+            if (cameraFile == null) {
+                Log.e(TAG, "handlePickedImageResult: no camera file for session " + session.id);
+                journalPick(null, null, null);
+                cancelPick();
+                return;
+            }
+            commitInBackground(cameraFile);
+        } else if (cameraFile != null) {
+            abortInBackground(cameraFile);
         }
-        Log.d(TAG, "handlePickedImageResult: " + imageUri);
-        if (withCrop) {
-            CropImage.activity(imageUri)
-                    .setGuidelines(CropImageView.Guidelines.ON)
-                    .setAspectRatio(aspectRatioX, aspectRatioY)
-                    .start(activity);
+        List<Uri> pickedUris = isCamera
+                ? Collections.singletonList(Uri.fromFile(diskCache.file(cameraFile)))
+                : getPickedUris(data);
+        Uri imageUri = pickedUris.get(0);
+        PickHandle pick = ensurePick();
+        if (batchListener != null) {
+            // batches aren't processed again after a restart
+            journalPick(null, null, null);
+            pick.setTotalImages(pickedUris.size());
+            processBatch(pickedUris, pick);
+            return;
+        }
+        journalReturnedPick(isCamera ? PickerStage.CAMERA : PickerStage.CHOOSER, imageUri, null, null);
+        handlePickedImage(imageUri);
+    }
+
+    private void handlePickedImage(Uri imageUri) {
+        currentResult = new PickResult(imageUri, 0);
+        if (previewListener != null && memoryPressure.getLevel() != MemoryLevel.CRITICAL) {
+            loadPreview(imageUri, currentResult);
+        }
+        if (PickProcessor.needsImport(imageUri)) {
+            importInBackground(imageUri);
         } else {
-            imageFile = new File(imageUri.getPath());
-            listener.onImagePicked(imageUri);
+            handleLocalImage(imageUri);
         }
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    private void deletePreviousCameraFiles() {
-        File imagePath = new File(activity.getFilesDir(), "images");
-        if (imagePath.exists() && imagePath.isDirectory()) {
-            if (imagePath.listFiles().length > 0) {
-                for (File file : imagePath.listFiles()) {
-                    if (!file.getName().equals(currentCameraFileName)) {
-                        file.delete();
-                    }
-                }
+    /**
+     * Makes the preview on the worker pool, next to the import instead of after it
+     */
+    private void loadPreview(Uri imageUri, PickResult result) {
+        Context context = activity.getApplicationContext();
+        int maxSize = SampleSize.scaled(options.previewMaxSize, memoryPressure.getLevel().decodeScale);
+        long startNanos = activityResultNanos;
+        PickerMetricsListener metricsListener = options.metricsListener;
+        OnImagePreviewListener previewListener = this.previewListener;
+        previewTarget = result;
+        ImagePreview prefetched = prefetcher != null ? prefetcher.getPreview(imageUri) : null;
+        if (prefetched != null) {
+            previewListener.onImagePreview(imageUri, new ImagePreview(prefetched.getBitmap(),
+                    prefetched.getSource(), System.nanoTime() - startNanos));
+            return;
+        }
+        heavyExecutor().execute(() -> {
+            long start = PickerMetrics.begin(PickerStage.PREVIEW);
+            ImagePreview preview = PreviewLoader.load(context, imageUri, maxSize, startNanos);
+            PickerMetrics.end(metricsListener, PickerStage.PREVIEW, start,
+                    preview != null ? BitmapPool.allocationSize(preview.getBitmap()) : 0, null);
+            if (preview == null) {
+                return;
             }
+            PickerExecutors.postToMainThread(() -> {
+                if (previewTarget == result) {
+                    previewListener.onImagePreview(imageUri, preview);
+                }
+            });
+        });
+    }
+
+    private List<Uri> getPickedUris(Intent data) {
+        ClipData clipData = data.getClipData();
+        if (clipData == null) {
+            return Collections.singletonList(data.getData());
+        }
+        int count = Math.min(clipData.getItemCount(), options.maxImages);
+        List<Uri> uris = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            uris.add(clipData.getItemAt(i).getUri());
         }
+        return uris;
     }
 
-    @SuppressWarnings("ResultOfMethodCallIgnored")
-    private void deletePreviouslyCroppedFiles(Uri currentCropImageUri) {
-        Log.d(TAG, "deletePreviouslyCroppedFiles: " + currentCropImageUri);
-        String croppedImageName = currentCropImageUri.getLastPathSegment();
-        File imagePath = activity.getCacheDir();
-        Log.d(TAG, "deletePreviouslyCroppedFiles: " + imagePath.exists() + " " + imagePath.isDirectory());
-        if (imagePath.exists() && imagePath.isDirectory()) {
-            Log.d(TAG, "deletePreviouslyCroppedFiles: " + imagePath.toString());
-            Log.d(TAG, "deletePreviouslyCroppedFiles: " + imagePath.listFiles().length);
-            if (imagePath.listFiles().length > 0) {
-                for (File file : imagePath.listFiles()) {
-                    Log.d(TAG, "deletePreviouslyCroppedFiles: " + file.getName());
-                    if (!file.getName().equals(croppedImageName)) {
-                        file.delete();
+    /**
+     * Processes every picked image on the worker pool, delivering each one as soon as it's done.
+     * The disk cache is held until the batch is done, so trimming after an image doesn't evict the
+     * files of images delivered before it
+     */
+    private void processBatch(List<Uri> uris, PickHandle pick) {
+        diskCache.hold();
+        pick.setDoneTask(diskCache::release);
+        PickProcessor processor = newProcessor(pick);
+        OnBatchPickedListener batchListener = this.batchListener;
+        PickResult[] results = new PickResult[uris.size()];
+        AtomicInteger remaining = new AtomicInteger(uris.size());
+        Executor executor = heavyExecutor();
+        for (int i = 0; i < uris.size(); i++) {
+            Uri uri = uris.get(i);
+            int index = i;
+            executor.execute(() -> {
+                if (pick.isCancelled()) {
+                    return;
+                }
+                PickResult result = processor.process(uri, index);
+                if (!result.isSuccessful() && !pick.isCancelled()) {
+                    Log.e(TAG, "processBatch: couldn't process " + uri, result.getError());
+                }
+                PickerExecutors.postToMainThread(() -> {
+                    if (pick.isCancelled()) {
+                        return;
                     }
+                    results[index] = result;
+                    batchListener.onItemProcessed(result);
+                    pick.onImageCompleted();
+                    if (remaining.decrementAndGet() == 0) {
+                        List<PickResult> batch = Arrays.asList(results);
+                        batchListener.onBatchProcessed(batch);
+                        pick.complete(batch);
+                    }
+                });
+            });
+        }
+    }
+
+    /**
+     * Snapshots the options, degraded for the current memory pressure
+     */
+    private PickProcessor newProcessor(PickHandle pick) {
+        PickOptions pickOptions = options.copy();
+        pickOptions.applyMemoryLevel(memoryPressure.getLevel());
+        pickOptions.executor = heavyExecutor();
+        return new PickProcessor(activity, diskCache, pickOptions, pick);
+    }
+
+    /**
+     * Executor for import, crop, encode and decode. The worker pool is shared by every session,
+     * so picks of different slots are processed at the same time
+     */
+    private Executor heavyExecutor() {
+        return executor != null ? executor : PickerExecutors.workers();
+    }
+
+    private void handleLocalImage(Uri imageUri) {
+        if (options.withCrop) {
+            cropStartNanos = System.nanoTime();
+            Intent cropIntent = CropImage.activity(imageUri)
+                    .setGuidelines(CropImageView.Guidelines.ON)
+                    .setAspectRatio(options.aspectRatioX, options.aspectRatioY)
+                    .setNoOutputImage(true)
+                    .getIntent(activity);
+            journalPick(PickerStage.CROP, currentResult != null ? currentResult.getSourceUri() : imageUri, imageUri);
+            activity.startActivityForResult(cropIntent, session.cropRequestCode);
+        } else {
+            deliverResult(imageUri);
+        }
+    }
+
+    /**
+     * Copies gallery content into our cache dir, so {@link #getImageFile()} is a real file
+     */
+    private void importInBackground(Uri sourceUri) {
+        PickHandle pick = ensurePick();
+        PickProcessor processor = newProcessor(pick);
+        heavyExecutor().execute(() -> {
+            ImportResult result = null;
+            try {
+                result = processor.importContent(sourceUri);
+            } catch (IOException | RuntimeException e) {
+                if (pick.isCancelled()) {
+                    return;
                 }
+                Log.e(TAG, "importInBackground: couldn't import " + sourceUri, e);
             }
+            ImportResult imported = result;
+            PickerExecutors.postToMainThread(() -> {
+                if (pick.isCancelled()) {
+                    return;
+                }
+                if (imported == null) {
+                    handleLocalImage(sourceUri);
+                    return;
+                }
+                if (currentResult != null) {
+                    currentResult.importResult = imported;
+                    currentResult.duplicate = imported.isReused();
+                }
+                if (importedListener != null) {
+                    importedListener.onImageImported(sourceUri, imported);
+                }
+                handleLocalImage(Uri.fromFile(imported.getFile()));
+            });
+        });
+    }
+
+    /**
+     * Runs encode/decode stages if there are any, then calls the listeners
+     */
+    private void deliverResult(Uri imageUri) {
+        PickResult result = currentResult != null ? currentResult : new PickResult(imageUri, 0);
+        currentResult = null;
+        result.imageUri = imageUri;
+        result.file = new File(imageUri.getPath());
+        PickHandle pick = ensurePick();
+        PickProcessor processor = newProcessor(pick);
+        if (!processor.hasFinishStages(result)) {
+            dispatchResult(result, pick);
+            return;
+        }
+        heavyExecutor().execute(() -> {
+            processor.finish(result);
+            if (pick.isCancelled()) {
+                return;
+            }
+            if (!result.isSuccessful()) {
+                Log.e(TAG, "deliverResult: couldn't process " + imageUri, result.getError());
+            }
+            PickerExecutors.postToMainThread(() -> dispatchResult(result, pick));
+        });
+    }
+
+    private void dispatchResult(PickResult result, PickHandle pick) {
+        if (pick.isCancelled()) {
+            return;
+        }
+        long start = PickerMetrics.begin(PickerStage.DELIVERY);
+        previewTarget = null;
+        imageFile = result.getFile();
+        journalPick(null, null, null);
+        listener.onImagePicked(result.getImageUri());
+        if (decodedListener != null) {
+            decodedListener.onImageDecoded(result.getImageUri(), result.getBitmap());
+        }
+        if (processedListener != null) {
+            processedListener.onImageProcessed(result);
         }
+        pick.onImageCompleted();
+        pick.complete(Collections.singletonList(result));
+        PickerMetrics.end(options.metricsListener, PickerStage.DELIVERY, start, 0, null);
+    }
+
+    private void abortPendingCameraFile() {
+        String cameraFile = session.pendingCameraFile.getAndSet(null);
+        if (cameraFile != null) {
+            abortInBackground(cameraFile);
+        }
+    }
+
+    private void commitInBackground(String key) {
+        PickerMetricsListener metricsListener = options.metricsListener;
+        PickerExecutors.background().execute(() -> {
+            long start = PickerMetrics.begin(PickerStage.CLEANUP);
+            IOException error = null;
+            try {
+                diskCache.commit(key);
+            } catch (IOException e) {
+                Log.e(TAG, "commitInBackground: " + key, e);
+                error = e;
+            }
+            PickerMetrics.end(metricsListener, PickerStage.CLEANUP, start, 0, error);
+        });
+    }
+
+    private void abortInBackground(String key) {
+        PickerMetricsListener metricsListener = options.metricsListener;
+        PickerExecutors.background().execute(() -> {
+            long start = PickerMetrics.begin(PickerStage.CLEANUP);
+            IOException error = null;
+            try {
+                diskCache.abort(key);
+            } catch (IOException e) {
+                Log.e(TAG, "abortInBackground: " + key, e);
+                error = e;
+            }
+            PickerMetrics.end(metricsListener, PickerStage.CLEANUP, start, 0, error);
+        });
+    }
+
+    /**
+     * Replays the journal and deletes the pre-cache camera directory on the background executor,
+     * so the first tap neither reads the journal nor waits for a trim holding the cache
+     */
+    private void openDiskCache(File filesDir) {
+        PickerExecutors.background().execute(() -> {
+            try {
+                diskCache.load();
+            } catch (IOException e) {
+                Log.e(TAG, "openDiskCache: " + diskCache.getDirectory(), e);
+            }
+            if (legacyImagesDeleted.compareAndSet(false, true)) {
+                deleteRecursively(new File(filesDir, LEGACY_IMAGES_DIR_NAME));
+            }
+        });
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
     @NonNull
     private Intent getCameraIntent() {
-        currentCameraFileName = "outputImage" + System.currentTimeMillis() + ".jpg";
-        File imagesDir = new File(activity.getFilesDir(), "images");
-        imagesDir.mkdirs();
-        File file = new File(imagesDir, currentCameraFileName);
-        try {
-            file.createNewFile();
-        } catch (IOException e) {
-            Log.d(TAG, "openCamera: coudln't crate ");
-            e.printStackTrace();
+        CameraCapture capture = preparedCameraCapture.getAndSet(null);
+        if (capture == null) {
+            capture = prepareCameraCapture();
+            String fileName = capture.fileName;
+            // the camera app creates the file itself, the journal only has to know it before the commit,
+            // which runs on the same executor
+            PickerExecutors.background().execute(() -> reserveCameraFile(fileName));
+        }
+        String previous = session.pendingCameraFile.getAndSet(capture.fileName);
+        if (previous != null) {
+            abortInBackground(previous);
         }
-        Log.d(TAG, "openCamera: file exists " + file.exists() + " " + file.toURI().toString());
+        return capture.intent;
+    }
+
+    /**
+     * Picks the camera file name and builds the intent, without touching the disk cache
+     */
+    @NonNull
+    private CameraCapture prepareCameraCapture() {
+        String fileName = PickProcessor.newFileName("camera", "jpg");
+        File file = diskCache.file(fileName);
         Intent cameraIntent = new Intent(MediaStore.ACTION_IMAGE_CAPTURE);
 
         String authority = activity.getPackageName() + ".smart-image-picket-provider";
@@ -266,22 +1228,46 @@ public class ImagePicker implements ImagePickerContract {
                 outputUri,
                 Intent.FLAG_GRANT_WRITE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION
         );
-        return cameraIntent;
+        return new CameraCapture(fileName, cameraIntent);
     }
 
-    private Uri getCameraFileUri(Activity activity) {
-        File imagePath = new File(activity.getFilesDir(), "images/" + currentCameraFileName);
-        return Uri.fromFile(imagePath);
+    /**
+     * Registers the camera file with the disk cache and creates it empty, background executor only
+     */
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    private void reserveCameraFile(String fileName) {
+        try {
+            diskCache.newFile(fileName).createNewFile();
+        } catch (IOException e) {
+            Log.e(TAG, "reserveCameraFile: couldn't create " + fileName, e);
+        }
+    }
+
+    private void startCameraActivity() {
+        Intent cameraIntent = getCameraIntent();
+        journalPick(PickerStage.CAMERA, null, null);
+        activityStage = PickerStage.CAMERA;
+        activityStartNanos = System.nanoTime();
+        activity.startActivityForResult(cameraIntent, session.chooserRequestCode);
     }
 
     private void startImagePickerActivity(boolean includeCamera) {
+        if (options.inAppGallery) {
+            // the camera file is only created once the camera cell is tapped
+            Intent galleryIntent = GalleryActivity.newIntent(activity, options.maxImages,
+                    includeCamera && PickerIntentCache.hasCameraApp(activity));
+            journalPick(PickerStage.CHOOSER, null, null);
+            activityStage = PickerStage.CHOOSER;
+            activityStartNanos = System.nanoTime();
+            activity.startActivityForResult(galleryIntent, session.chooserRequestCode);
+            return;
+        }
         List<Intent> allIntents = new ArrayList<>();
-        PackageManager packageManager = activity.getPackageManager();
-
-        List<Intent> galleryIntents = getGalleryIntents(packageManager, Intent.ACTION_GET_CONTENT, false);
-        if (galleryIntents.size() == 0) {
-            // if no intents found for get-content try pick intent action (Huawei P9).
-            galleryIntents = getGalleryIntents(packageManager, Intent.ACTION_PICK, false);
+        List<Intent> galleryIntents = PickerIntentCache.getGalleryIntents(activity);
+        if (options.isMultiple()) {
+            for (Intent intent : galleryIntents) {
+                intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
+            }
         }
 
         if (includeCamera) {
@@ -302,7 +1288,10 @@ public class ImagePicker implements ImagePickerContract {
 
         // Add all other intents
         chooserIntent.putExtra(Intent.EXTRA_INITIAL_INTENTS, allIntents.toArray(new Parcelable[allIntents.size()]));
-        activity.startActivityForResult(chooserIntent, PICK_IMAGE_CHOOSER_REQUEST_CODE);
+        journalPick(PickerStage.CHOOSER, null, null);
+        activityStage = PickerStage.CHOOSER;
+        activityStartNanos = System.nanoTime();
+        activity.startActivityForResult(chooserIntent, session.chooserRequestCode);
     }
 
 }
@@ -1,23 +1,93 @@
 package com.myhexaville.smartimagepicker;
 
 import android.content.Intent;
+import android.support.annotation.Nullable;
 
 import java.io.File;
+import java.util.concurrent.Executor;
 
 public interface ImagePickerContract {
     @SuppressWarnings("UnusedReturnValue")
     ImagePicker setWithImageCrop(int aspectRatioX, int aspectRatioY);
 
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithAutoCrop(int aspectRatioX, int aspectRatioY);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithImageDecode(int maxWidth, int maxHeight, OnImageDecodedListener listener);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithPreview(int maxSize, OnImagePreviewListener listener);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithImageCompression(OutputFormat format, int maxWidth, int maxHeight, int quality);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithMaxFileSize(int maxKilobytes);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithTransforms(Transform... transforms);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithRenditions(Rendition... renditions);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithMetadataStripping(boolean strip, JpegMetadata... kept);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithPlaceholder(int componentsX, int componentsY);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithMultipleSelection(int maxImages, OnBatchPickedListener listener);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithInAppGallery(boolean inAppGallery);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithMemoryCache(BitmapMemoryCache memoryCache);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithDiskCacheBudget(long maxBytes, int maxEntries);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithOutputSink(OutputSink sink, boolean keepFile);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithDeduplication(boolean enabled);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setWithRecentImagesPrefetch(int count);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setOnImageImportedListener(OnImageImportedListener listener);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setOnImageProcessedListener(OnImageProcessedListener listener);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setMetricsListener(PickerMetricsListener listener);
+
+    @SuppressWarnings("UnusedReturnValue")
+    ImagePicker setExecutor(Executor executor);
+
     // todo add this in v1.1
 //    ImagePicker setWithImageCrop();
 //    ImagePicker setWithIntentPickerTitle(String title);
 //    ImagePicker setWithIntentPickerTitle(@StringRes int title);
 
 
-    void choosePicture(boolean includeCamera);
+    void prewarm();
+
+    PickHandle choosePicture(boolean includeCamera);
+
+    PickHandle openCamera();
+
+    @Nullable
+    PickHandle getCurrentPick();
 
-    void openCamera();
+    void clearSession();
 
+    @Nullable
     File getImageFile();
 
     void handlePermission(int requestCode, int[] grantResults);
@@ -0,0 +1,57 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+
+/**
+ * Small bitmap shown while the picked image is still being processed.
+ */
+public class ImagePreview {
+
+    public enum Source {
+        /**
+         * Thumbnail the camera embedded in the JPEG's EXIF
+         */
+        EXIF_THUMBNAIL,
+        /**
+         * Thumbnail the media provider already has for a gallery image
+         */
+        MEDIA_STORE_THUMBNAIL,
+        /**
+         * Heavily subsampled decode of the image itself
+         */
+        SUBSAMPLED
+    }
+
+    private final Bitmap bitmap;
+    private final Source source;
+    private final long timeToPreviewNanos;
+
+    ImagePreview(Bitmap bitmap, Source source, long timeToPreviewNanos) {
+        this.bitmap = bitmap;
+        this.source = source;
+        this.timeToPreviewNanos = timeToPreviewNanos;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Time from {@link ImagePicker#handleActivityResult} until the preview was ready
+     */
+    public long getTimeToPreviewNanos() {
+        return timeToPreviewNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ImagePreview{" + bitmap.getWidth() + "x" + bitmap.getHeight()
+                + ", source=" + source
+                + ", timeToPreview=" + timeToPreviewNanos / 1_000_000 + " ms"
+                + '}';
+    }
+}
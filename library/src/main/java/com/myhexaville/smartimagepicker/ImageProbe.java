@@ -0,0 +1,130 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tells an image's size, type, byte size and orientation without decoding it, e.g. to decide whether
+ * to crop, compress or reject it. Only the container header is read through a small buffer, formats
+ * the header parser doesn't know fall back to the platform decoder with {@code inJustDecodeBounds}.
+ * Works with any uri, not only picked ones.
+ */
+public final class ImageProbe {
+    private static final String TAG = "ImageProbe";
+    /**
+     * Per probed uri, headers are usually within the first few hundred bytes
+     */
+    static final int READ_BUFFER_SIZE = 4 * 1024;
+
+    private ImageProbe() {
+    }
+
+    /**
+     * Blocks, don't call it from the main thread
+     */
+    @WorkerThread
+    @NonNull
+    public static ImageInfo probe(Context context, Uri uri) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(uri, "r");
+        if (descriptor == null) {
+            throw new FileNotFoundException("Couldn't open " + uri);
+        }
+        long byteSize;
+        HeaderProbe.Header header;
+        try (ParcelFileDescriptor pfd = descriptor;
+             InputStream in = new BufferedInputStream(new FileInputStream(pfd.getFileDescriptor()), READ_BUFFER_SIZE)) {
+            byteSize = pfd.getStatSize();
+            header = HeaderProbe.read(in);
+        }
+        if (byteSize < 0) {
+            byteSize = querySize(resolver, uri);
+        }
+        if (header != null) {
+            return new ImageInfo(uri, header.width, header.height, header.mimeType, byteSize, header.orientation, true);
+        }
+        return probeBounds(resolver, uri, byteSize);
+    }
+
+    /**
+     * Probes every uri on the worker pool, at most as many at once as there are cores
+     */
+    public static void probeAll(Context context, List<Uri> uris, OnImagesProbedListener listener) {
+        probeAll(context, uris, PickerExecutors.workers(), listener);
+    }
+
+    public static void probeAll(Context context, List<Uri> uris, Executor executor, OnImagesProbedListener listener) {
+        Context appContext = context.getApplicationContext();
+        List<Uri> pending = new ArrayList<>(uris);
+        if (pending.isEmpty()) {
+            PickerExecutors.postToMainThread(() -> listener.onImagesProbed(new ArrayList<>()));
+            return;
+        }
+        ImageInfo[] infos = new ImageInfo[pending.size()];
+        AtomicInteger remaining = new AtomicInteger(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            Uri uri = pending.get(i);
+            int index = i;
+            executor.execute(() -> {
+                try {
+                    infos[index] = probe(appContext, uri);
+                } catch (IOException | RuntimeException e) {
+                    Log.e(TAG, "probeAll: couldn't probe " + uri, e);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    PickerExecutors.postToMainThread(() -> listener.onImagesProbed(Arrays.asList(infos)));
+                }
+            });
+        }
+    }
+
+    private static ImageInfo probeBounds(ContentResolver resolver, Uri uri, long byteSize) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new FileNotFoundException("Couldn't open " + uri);
+            }
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Not an image: " + uri);
+        }
+        String mimeType = options.outMimeType != null ? options.outMimeType : resolver.getType(uri);
+        return new ImageInfo(uri, options.outWidth, options.outHeight, mimeType, byteSize,
+                ExifParser.ORIENTATION_NORMAL, false);
+    }
+
+    private static long querySize(ContentResolver resolver, Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return -1;
+        }
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) {
+                return cursor.getLong(0);
+            }
+        } catch (RuntimeException e) {
+            // some providers throw for queries they don't support
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,80 @@
+package com.myhexaville.smartimagepicker;
+
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of copying picked content into the library's own directory
+ */
+public class ImportResult {
+    private final File file;
+    private final long bytesCopied;
+    private final long durationNanos;
+    private final boolean zeroCopy;
+    String contentHash;
+    boolean reused;
+
+    ImportResult(File file, long bytesCopied, long durationNanos, boolean zeroCopy) {
+        this.file = file;
+        this.bytesCopied = bytesCopied;
+        this.durationNanos = durationNanos;
+        this.zeroCopy = zeroCopy;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * True if the bytes were moved with {@link java.nio.channels.FileChannel#transferTo},
+     * false if the provider only gave a stream and they went through a buffer
+     */
+    public boolean isZeroCopy() {
+        return zeroCopy;
+    }
+
+    /**
+     * SHA-256 of the content as hex if {@link ImagePicker#setWithDeduplication} was set, otherwise null
+     */
+    @Nullable
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * True if the same content was imported before and that file was reused, so nothing was copied
+     * or only the duplicate copy was dropped
+     */
+    public boolean isReused() {
+        return reused;
+    }
+
+    public long getBytesPerSecond() {
+        if (durationNanos <= 0) {
+            return bytesCopied;
+        }
+        return bytesCopied * TimeUnit.SECONDS.toNanos(1) / durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult{" +
+                "file=" + file +
+                ", bytesCopied=" + bytesCopied +
+                ", durationMs=" + TimeUnit.NANOSECONDS.toMillis(durationNanos) +
+                ", bytesPerSecond=" + getBytesPerSecond() +
+                ", zeroCopy=" + zeroCopy +
+                ", reused=" + reused +
+                '}';
+    }
+}
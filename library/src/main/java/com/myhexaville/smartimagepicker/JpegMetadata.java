@@ -0,0 +1,26 @@
+package com.myhexaville.smartimagepicker;
+
+/**
+ * Metadata {@link ImagePicker#setWithMetadataStripping(JpegMetadata...)} can keep. Everything else
+ * in the JPEG's APPn and comment segments is dropped: EXIF with its GPS position, device make and
+ * model, timestamps and thumbnail, IPTC, MPF and vendor segments. JFIF and Adobe segments aren't
+ * metadata, they tell decoders how to read the colors, so they're always kept.
+ */
+public enum JpegMetadata {
+    /**
+     * EXIF orientation, written as a new EXIF segment holding only that tag
+     */
+    ORIENTATION,
+    /**
+     * Embedded ICC color profile, e.g. Display P3 photos look washed out without it
+     */
+    COLOR_PROFILE,
+    /**
+     * XMP packets as they are. They can hold a location too, only keep them if the app checks them
+     */
+    XMP,
+    /**
+     * COM segments
+     */
+    COMMENTS
+}
@@ -0,0 +1,219 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Removes metadata from a JPEG without decoding it. Header segments are read one at a time and only
+ * the allowed ones are written, an EXIF segment is replaced by one that holds just the orientation
+ * when that's kept, and everything from the start of scan on, the compressed pixels, is copied
+ * through untouched. Free of Android types so it can run on a plain JVM.
+ */
+final class JpegMetadataStripper {
+    private static final int MARKER_TEM = 0x01;
+    private static final int MARKER_RST0 = 0xD0;
+    private static final int MARKER_RST7 = 0xD7;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP2 = 0xE2;
+    private static final int MARKER_APP14 = 0xEE;
+    private static final int MARKER_APP15 = 0xEF;
+    private static final int MARKER_COM = 0xFE;
+
+    private static final byte[] JFIF = ascii("JFIF\0");
+    private static final byte[] ADOBE = ascii("Adobe");
+    private static final byte[] ICC_PROFILE = ascii("ICC_PROFILE\0");
+    private static final byte[] XMP = ascii("http://ns.adobe.com/xap/1.0/\0");
+    private static final byte[] XMP_EXTENSION = ascii("http://ns.adobe.com/xmp/extension/\0");
+
+    /**
+     * Marker and length, then the longest payload the length can describe
+     */
+    private static final int MAX_SEGMENT_SIZE = 4 + 0xFFFF - 2;
+    private static final int ORIENTATION_SEGMENT_SIZE = 36;
+
+    private JpegMetadataStripper() {
+    }
+
+    /**
+     * Writes the source, read from position 0, without the metadata that isn't in {@code kept}
+     *
+     * @return number of segments dropped or replaced, -1 if the source isn't a JPEG and nothing was written
+     */
+    static int strip(FileChannel source, WritableByteChannel target, Set<JpegMetadata> kept,
+                     Cancellable cancellable) throws IOException {
+        ByteBuffer segment = ByteBuffer.allocate(MAX_SEGMENT_SIZE);
+        segment.limit(2);
+        if (readFully(source, segment, 0) < 2
+                || segment.get(0) != (byte) 0xFF || (segment.get(1) & 0xFF) != ExifParser.MARKER_SOI) {
+            return -1;
+        }
+        segment.flip();
+        writeFully(target, segment);
+
+        long position = 2;
+        int removed = 0;
+        boolean orientationWritten = false;
+        while (true) {
+            cancellable.throwIfCancelled();
+            segment.clear();
+            segment.limit(4);
+            int read = readFully(source, segment, position);
+            if (read < 2) {
+                throw new EOFException("JPEG ends before the start of scan");
+            }
+            // skips bytes up to the next 0xFF, then 0xFF fill bytes
+            if (segment.get(0) != (byte) 0xFF || segment.get(1) == (byte) 0xFF) {
+                position++;
+                continue;
+            }
+            int marker = segment.get(1) & 0xFF;
+            if (marker == ExifParser.MARKER_SOS) {
+                break;
+            }
+            if (marker == ExifParser.MARKER_EOI || isStandalone(marker)) {
+                segment.position(0);
+                segment.limit(2);
+                writeFully(target, segment);
+                position += 2;
+                if (marker == ExifParser.MARKER_EOI) {
+                    return removed;
+                }
+                continue;
+            }
+            if (read < 4) {
+                throw new EOFException("JPEG ends inside a segment header");
+            }
+            int length = segment.getShort(2) & 0xFFFF;
+            if (length < 2) {
+                throw new IOException("Bad length " + length + " of segment 0x" + Integer.toHexString(marker));
+            }
+            int size = 2 + length;
+            if (!isMetadata(marker)) {
+                copySegment(source, target, segment, position, size);
+            } else if (isKept(marker, peek(source, segment, position, size), kept)) {
+                segment.position(0);
+                writeFully(target, segment);
+            } else {
+                removed++;
+                if (marker == ExifParser.MARKER_APP1 && kept.contains(JpegMetadata.ORIENTATION)
+                        && !orientationWritten && ExifParser.isExifSegment(payload(segment))) {
+                    orientationWritten = true;
+                    int orientation = ExifParser.parseOrientation(payload(segment));
+                    if (orientation != ExifParser.ORIENTATION_NORMAL) {
+                        writeFully(target, orientationSegment(orientation));
+                    }
+                }
+            }
+            position += size;
+        }
+        source.position(position);
+        ChannelCopier.copy(source, target, cancellable);
+        return removed;
+    }
+
+    /**
+     * EXIF segment with IFD0 holding only the orientation tag
+     */
+    static ByteBuffer orientationSegment(int orientation) {
+        ByteBuffer segment = ByteBuffer.allocate(ORIENTATION_SEGMENT_SIZE);
+        segment.put((byte) 0xFF).put((byte) ExifParser.MARKER_APP1).putShort((short) (ORIENTATION_SEGMENT_SIZE - 2));
+        segment.put(ExifParser.EXIF_HEADER);
+        segment.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        segment.putShort((short) 1);
+        segment.putShort((short) ExifParser.TAG_ORIENTATION).putShort((short) ExifParser.TYPE_SHORT).putInt(1)
+                .putShort((short) orientation).putShort((short) 0);
+        segment.putInt(0);
+        segment.flip();
+        return segment;
+    }
+
+    private static boolean isStandalone(int marker) {
+        return marker == MARKER_TEM || marker >= MARKER_RST0 && marker <= MARKER_RST7;
+    }
+
+    private static boolean isMetadata(int marker) {
+        return marker >= MARKER_APP0 && marker <= MARKER_APP15 || marker == MARKER_COM;
+    }
+
+    private static boolean isKept(int marker, byte[] payload, Set<JpegMetadata> kept) {
+        switch (marker) {
+            case MARKER_APP0:
+                // JFXX holds a thumbnail
+                return startsWith(payload, JFIF);
+            case ExifParser.MARKER_APP1:
+                return kept.contains(JpegMetadata.XMP)
+                        && (startsWith(payload, XMP) || startsWith(payload, XMP_EXTENSION));
+            case MARKER_APP2:
+                return kept.contains(JpegMetadata.COLOR_PROFILE) && startsWith(payload, ICC_PROFILE);
+            case MARKER_APP14:
+                return startsWith(payload, ADOBE);
+            case MARKER_COM:
+                return kept.contains(JpegMetadata.COMMENTS);
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Reads the whole segment into the buffer, marker and length included, and returns its payload
+     */
+    private static byte[] peek(FileChannel source, ByteBuffer segment, long position, int size) throws IOException {
+        segment.limit(size);
+        if (readFully(source, segment, position) < size) {
+            throw new EOFException("JPEG ends inside segment 0x" + Integer.toHexString(segment.get(1) & 0xFF));
+        }
+        return payload(segment);
+    }
+
+    private static byte[] payload(ByteBuffer segment) {
+        return Arrays.copyOfRange(segment.array(), 4, segment.limit());
+    }
+
+    private static void copySegment(FileChannel source, WritableByteChannel target, ByteBuffer segment,
+                                    long position, int size) throws IOException {
+        peek(source, segment, position, size);
+        segment.position(0);
+        writeFully(target, segment);
+    }
+
+    /**
+     * Fills the buffer from its position on, reading the source at {@code position}.
+     * Returns the number of bytes in the buffer, fewer than its limit only at the end of the source
+     */
+    private static int readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static void writeFully(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static boolean startsWith(byte[] payload, byte[] prefix) {
+        if (payload.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (payload[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(Charset.forName("US-ASCII"));
+    }
+}
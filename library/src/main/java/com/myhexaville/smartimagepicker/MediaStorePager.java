@@ -0,0 +1,117 @@
+package com.myhexaville.smartimagepicker;
+
+import android.annotation.SuppressLint;
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Loads the media provider's images newest first, one page per query. A page continues after the
+ * last loaded image (date added, then id) instead of skipping an offset, so a page deep into a big
+ * library costs as much as the first one and images added meanwhile don't shift the pages.
+ * Only ids and orientations are kept, 50k images take well under a megabyte.
+ */
+final class MediaStorePager {
+    /**
+     * Page size of the gallery grid
+     */
+    static final int PAGE_SIZE = 500;
+    /**
+     * Android 11, where the provider stopped accepting LIMIT in the sort order and honors query args
+     */
+    private static final int QUERY_ARGS_LIMIT_SDK = 30;
+    private static final String[] PROJECTION = {
+            MediaStore.Images.Media._ID,
+            MediaStore.Images.Media.DATE_ADDED,
+            MediaStore.Images.Media.ORIENTATION
+    };
+    private static final String SORT_ORDER =
+            MediaStore.Images.Media.DATE_ADDED + " DESC, " + MediaStore.Images.Media._ID + " DESC";
+    private static final String AFTER_SELECTION = MediaStore.Images.Media.DATE_ADDED + " < ? OR ("
+            + MediaStore.Images.Media.DATE_ADDED + " = ? AND " + MediaStore.Images.Media._ID + " < ?)";
+
+    static final class Page {
+        final long[] ids;
+        final int[] orientations;
+        final int count;
+
+        Page(long[] ids, int[] orientations, int count) {
+            this.ids = ids;
+            this.orientations = orientations;
+            this.count = count;
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final int pageSize;
+    private long lastDateAdded = -1;
+    private long lastId = -1;
+    private boolean exhausted;
+
+    MediaStorePager(ContentResolver resolver, int pageSize) {
+        this.resolver = resolver;
+        this.pageSize = pageSize;
+    }
+
+    boolean isExhausted() {
+        return exhausted;
+    }
+
+    /**
+     * Returns the next page, an empty one once everything is loaded. Orientations are EXIF values
+     */
+    @WorkerThread
+    @NonNull
+    Page loadNextPage() {
+        long[] ids = new long[pageSize];
+        int[] orientations = new int[pageSize];
+        int count = 0;
+        if (exhausted) {
+            return new Page(ids, orientations, 0);
+        }
+        try (Cursor cursor = query()) {
+            if (cursor != null) {
+                int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media._ID);
+                int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATE_ADDED);
+                int orientationColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.ORIENTATION);
+                // the provider may ignore the limit on some versions, the rest is the next pages
+                while (count < pageSize && cursor.moveToNext()) {
+                    ids[count] = cursor.getLong(idColumn);
+                    orientations[count] = RegionCropper.orientationForDegrees(cursor.getInt(orientationColumn));
+                    lastDateAdded = cursor.getLong(dateColumn);
+                    lastId = ids[count];
+                    count++;
+                }
+            }
+        }
+        if (count < pageSize) {
+            exhausted = true;
+        }
+        return new Page(ids, orientations, count);
+    }
+
+    @SuppressLint("NewApi")
+    private Cursor query() {
+        String selection = null;
+        String[] selectionArgs = null;
+        if (lastId != -1) {
+            selection = AFTER_SELECTION;
+            selectionArgs = new String[]{
+                    String.valueOf(lastDateAdded), String.valueOf(lastDateAdded), String.valueOf(lastId)};
+        }
+        if (Build.VERSION.SDK_INT >= QUERY_ARGS_LIMIT_SDK) {
+            Bundle args = new Bundle();
+            args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, SORT_ORDER);
+            args.putInt(ContentResolver.QUERY_ARG_LIMIT, pageSize);
+            return resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION, args, null);
+        }
+        return resolver.query(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, PROJECTION, selection, selectionArgs,
+                SORT_ORDER + " LIMIT " + pageSize);
+    }
+}
@@ -0,0 +1,37 @@
+package com.myhexaville.smartimagepicker;
+
+/**
+ * How much the picker degrades its work because of memory pressure, see {@link MemoryPressure}.
+ */
+public enum MemoryLevel {
+    NORMAL(1f),
+    /**
+     * Bitmap caches are halved and decodes are 3/4 of the requested size
+     */
+    MODERATE(0.75f),
+    /**
+     * Bitmap caches keep a quarter, decodes are half size and JPEGs are decoded as RGB_565
+     */
+    LOW(0.5f),
+    /**
+     * Bitmap caches are emptied, decodes are a quarter size and previews are skipped
+     */
+    CRITICAL(0.25f);
+
+    final float decodeScale;
+
+    MemoryLevel(float decodeScale) {
+        this.decodeScale = decodeScale;
+    }
+
+    boolean prefersRgb565() {
+        return compareTo(LOW) >= 0;
+    }
+
+    /**
+     * Prefetch and prewarm only run when there's no pressure at all
+     */
+    boolean allowsPrefetch() {
+        return this == NORMAL;
+    }
+}
@@ -0,0 +1,137 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Follows {@link ComponentCallbacks2#onTrimMemory} for the whole process and turns it into a
+ * {@link MemoryLevel}. Bitmap caches given to pickers are trimmed right away for every level.
+ * Only the RUNNING levels, sent while the app is in the foreground, also make picks decode smaller
+ * bitmaps: the background levels mean the process may be killed, not that picks run short of memory.
+ * The system doesn't report when pressure clears, so the level goes back to {@link MemoryLevel#NORMAL}
+ * after {@link #RECOVERY_DELAY_MS} without callbacks.
+ */
+public final class MemoryPressure implements ComponentCallbacks2 {
+    static final long RECOVERY_DELAY_MS = 30_000;
+
+    private static MemoryPressure instance;
+
+    private final Set<BitmapMemoryCache> caches = Collections.newSetFromMap(new WeakHashMap<>());
+    private final List<OnMemoryLevelChangedListener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable recovery = () -> setLevel(MemoryLevel.NORMAL);
+    private volatile MemoryLevel level = MemoryLevel.NORMAL;
+
+    private MemoryPressure() {
+    }
+
+    /**
+     * Registers with the application context the first time it's called
+     */
+    public static synchronized MemoryPressure get(Context context) {
+        if (instance == null) {
+            instance = new MemoryPressure();
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    /**
+     * Current level, e.g. to attach to crash reports
+     */
+    @NonNull
+    public MemoryLevel getLevel() {
+        return level;
+    }
+
+    public void addOnLevelChangedListener(OnMemoryLevelChangedListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeOnLevelChangedListener(OnMemoryLevelChangedListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Trims {@code cache} together with the picker's own memory, it isn't kept from being collected
+     */
+    void register(BitmapMemoryCache cache) {
+        synchronized (caches) {
+            caches.add(cache);
+        }
+        cache.trimMemory(level);
+    }
+
+    @Override
+    public void onTrimMemory(int trimLevel) {
+        switch (trimLevel) {
+            case TRIM_MEMORY_RUNNING_CRITICAL:
+                onPressure(MemoryLevel.CRITICAL);
+                break;
+            case TRIM_MEMORY_RUNNING_LOW:
+                onPressure(MemoryLevel.LOW);
+                break;
+            case TRIM_MEMORY_RUNNING_MODERATE:
+                onPressure(MemoryLevel.MODERATE);
+                break;
+            case TRIM_MEMORY_COMPLETE:
+                trimCaches(MemoryLevel.CRITICAL);
+                break;
+            case TRIM_MEMORY_MODERATE:
+                trimCaches(MemoryLevel.LOW);
+                break;
+            case TRIM_MEMORY_BACKGROUND:
+                trimCaches(MemoryLevel.MODERATE);
+                break;
+            default:
+                // UI hidden isn't memory pressure
+                break;
+        }
+    }
+
+    /**
+     * Sent to background processes, like {@link #TRIM_MEMORY_COMPLETE}
+     */
+    @Override
+    public void onLowMemory() {
+        trimCaches(MemoryLevel.CRITICAL);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    private void onPressure(MemoryLevel level) {
+        trimCaches(level);
+        PickerExecutors.removeFromMainThread(recovery);
+        PickerExecutors.postToMainThreadDelayed(recovery, RECOVERY_DELAY_MS);
+        setLevel(level);
+    }
+
+    private void trimCaches(MemoryLevel level) {
+        BitmapMemoryCache[] toTrim;
+        synchronized (caches) {
+            toTrim = caches.toArray(new BitmapMemoryCache[caches.size()]);
+        }
+        for (BitmapMemoryCache cache : toTrim) {
+            cache.trimMemory(level);
+        }
+    }
+
+    private void setLevel(MemoryLevel level) {
+        if (this.level == level) {
+            return;
+        }
+        this.level = level;
+        for (OnMemoryLevelChangedListener listener : listeners) {
+            listener.onMemoryLevelChanged(level);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.myhexaville.smartimagepicker;
+
+import java.util.List;
+
+public interface OnBatchPickedListener {
+    /**
+     * Called on the main thread as soon as one image of the batch is processed,
+     * in completion order. Check {@link PickResult#isSuccessful()}, one failure doesn't stop the batch
+     */
+    void onItemProcessed(PickResult result);
+
+    /**
+     * Called on the main thread after every image is processed, results are in picked order
+     */
+    void onBatchProcessed(List<PickResult> results);
+}
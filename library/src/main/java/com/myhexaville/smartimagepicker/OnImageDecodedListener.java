@@ -0,0 +1,12 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.annotation.Nullable;
+
+public interface OnImageDecodedListener {
+    /**
+     * Called on the main thread, bitmap is null if the image couldn't be decoded
+     */
+    void onImageDecoded(Uri imageUri, @Nullable Bitmap bitmap);
+}
@@ -0,0 +1,10 @@
+package com.myhexaville.smartimagepicker;
+
+import android.net.Uri;
+
+public interface OnImageImportedListener {
+    /**
+     * Called on the main thread after a gallery pick was copied into the library's directory
+     */
+    void onImageImported(Uri sourceUri, ImportResult result);
+}
@@ -0,0 +1,11 @@
+package com.myhexaville.smartimagepicker;
+
+import android.net.Uri;
+
+public interface OnImagePreviewListener {
+    /**
+     * Called on the main thread before the picked image is delivered, only if the preview is
+     * ready first. Not called if no preview could be made
+     */
+    void onImagePreview(Uri sourceUri, ImagePreview preview);
+}
@@ -0,0 +1,9 @@
+package com.myhexaville.smartimagepicker;
+
+public interface OnImageProcessedListener {
+    /**
+     * Called on the main thread with everything the picker produced, after
+     * {@link OnImagePickedListener#onImagePicked(android.net.Uri)}
+     */
+    void onImageProcessed(PickResult result);
+}
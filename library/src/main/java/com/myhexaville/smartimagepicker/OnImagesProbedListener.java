@@ -0,0 +1,11 @@
+package com.myhexaville.smartimagepicker;
+
+import java.util.List;
+
+public interface OnImagesProbedListener {
+    /**
+     * Called on the main thread once every uri is probed, in the same order as the uris.
+     * Uris that couldn't be read or aren't images are null
+     */
+    void onImagesProbed(List<ImageInfo> infos);
+}
@@ -0,0 +1,8 @@
+package com.myhexaville.smartimagepicker;
+
+public interface OnMemoryLevelChangedListener {
+    /**
+     * Called on the main thread
+     */
+    void onMemoryLevelChanged(MemoryLevel level);
+}
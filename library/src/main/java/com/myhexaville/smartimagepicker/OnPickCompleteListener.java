@@ -0,0 +1,8 @@
+package com.myhexaville.smartimagepicker;
+
+public interface OnPickCompleteListener {
+    /**
+     * Called on the main thread once the pick delivered its results or was cancelled
+     */
+    void onPickComplete(PickHandle pick);
+}
@@ -0,0 +1,9 @@
+package com.myhexaville.smartimagepicker;
+
+public interface OnPickProgressListener {
+    /**
+     * Called on the main thread when an image enters a stage, and with {@link PickerStage#DELIVERY}
+     * when it's done
+     */
+    void onPickProgress(PickHandle pick, PickerStage stage, int completedImages, int totalImages);
+}
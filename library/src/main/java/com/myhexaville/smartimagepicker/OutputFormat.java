@@ -0,0 +1,70 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+public enum OutputFormat {
+    JPEG(Bitmap.CompressFormat.JPEG, "jpg"),
+    WEBP_LOSSY(Bitmap.CompressFormat.WEBP, "webp"),
+    /**
+     * Lossless WEBP from API 18 on, the WEBP encoder is lossless at quality 100 until API 30 adds a
+     * format for it. Below API 18 that encoder is lossy, so the output is PNG there, with the png
+     * extension and image/png MIME type. Quality is ignored and max file size can't be searched for
+     */
+    WEBP_LOSSLESS(losslessCompressFormat());
+
+    /**
+     * Bitmap.CompressFormat.WEBP_LOSSLESS was added in API 30, newer than the SDK the library
+     * compiles against, so it's looked up by name
+     */
+    private static final int LOSSLESS_WEBP_SDK = 30;
+    /**
+     * First version whose WEBP encoder switches to lossless at quality 100
+     */
+    private static final int LOSSLESS_WEBP_QUALITY_SDK = Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    final Bitmap.CompressFormat compressFormat;
+    final String extension;
+
+    OutputFormat(Bitmap.CompressFormat compressFormat, String extension) {
+        this.compressFormat = compressFormat;
+        this.extension = extension;
+    }
+
+    OutputFormat(Bitmap.CompressFormat compressFormat) {
+        this(compressFormat, compressFormat == Bitmap.CompressFormat.PNG ? "png" : "webp");
+    }
+
+    /**
+     * Quality passed to {@link Bitmap#compress}. The WEBP format switches to lossless at 100 from
+     * API 18 on, so lossy WEBP is capped at 99
+     */
+    int compressQuality(int quality) {
+        switch (this) {
+            case WEBP_LOSSLESS:
+                return 100;
+            case WEBP_LOSSY:
+                return Math.min(quality, 99);
+            default:
+                return quality;
+        }
+    }
+
+    boolean isLossy() {
+        return this != WEBP_LOSSLESS;
+    }
+
+    private static Bitmap.CompressFormat losslessCompressFormat() {
+        if (Build.VERSION.SDK_INT >= LOSSLESS_WEBP_SDK) {
+            try {
+                return Bitmap.CompressFormat.valueOf("WEBP_LOSSLESS");
+            } catch (IllegalArgumentException e) {
+                // a vendor build without it, quality 100 still works
+            }
+        }
+        if (Build.VERSION.SDK_INT >= LOSSLESS_WEBP_QUALITY_SDK) {
+            return Bitmap.CompressFormat.WEBP;
+        }
+        return Bitmap.CompressFormat.PNG;
+    }
+}
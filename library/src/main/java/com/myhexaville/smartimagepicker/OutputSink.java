@@ -0,0 +1,17 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Where the final bytes of every picked image are streamed, see {@link ImagePicker#setWithOutputSink}.
+ * Wrap an {@link java.io.OutputStream} with {@link java.nio.channels.Channels#newChannel}
+ */
+public interface OutputSink {
+    /**
+     * Called on a worker thread when {@code result} is about to be written. The bytes come in
+     * chunks of 64 KB and a blocking channel holds the picker back until it took each one.
+     * The channel is closed after the last chunk, or when writing fails or the pick is cancelled
+     */
+    WritableByteChannel open(PickResult result) throws IOException;
+}
@@ -0,0 +1,200 @@
+package com.myhexaville.smartimagepicker;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One pick, from opening the chooser or camera until its results are delivered. Cancelling it
+ * stops import, crop and encode work at the next chunk, and nothing is delivered to the picker's
+ * listeners afterwards. The blocking {@link #get()} is for background threads only, results are
+ * completed on the main thread.
+ */
+public class PickHandle implements Future<List<PickResult>>, Cancellable {
+    private final CountDownLatch completion = new CountDownLatch(1);
+    private volatile boolean cancelled;
+    private volatile List<PickResult> results;
+    private volatile int totalImages = 1;
+    private int completedImages;
+    private OnPickProgressListener progressListener;
+    private OnPickCompleteListener completeListener;
+    private Runnable doneTask;
+
+    PickHandle() {
+    }
+
+    @MainThread
+    public PickHandle setOnProgressListener(OnPickProgressListener listener) {
+        this.progressListener = listener;
+        return this;
+    }
+
+    /**
+     * Called right away if the pick is already done
+     */
+    @MainThread
+    public PickHandle setOnCompleteListener(OnPickCompleteListener listener) {
+        this.completeListener = listener;
+        if (isDone() && listener != null) {
+            listener.onPickComplete(this);
+        }
+        return this;
+    }
+
+    /**
+     * Cancels the pick, returns false if it was already done
+     */
+    public boolean cancel() {
+        synchronized (this) {
+            if (isDone()) {
+                return false;
+            }
+            cancelled = true;
+            results = Collections.emptyList();
+        }
+        completion.countDown();
+        PickerExecutors.postToMainThread(() -> {
+            runDoneTask();
+            notifyComplete();
+        });
+        return true;
+    }
+
+    /**
+     * Same as {@link #cancel()}, running work is always stopped at its next check
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return cancel();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return results != null;
+    }
+
+    @Override
+    public List<PickResult> get() throws InterruptedException {
+        completion.await();
+        return resultsOrThrow();
+    }
+
+    @Override
+    public List<PickResult> get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!completion.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return resultsOrThrow();
+    }
+
+    /**
+     * First picked image, null until the pick is done or if it was cancelled
+     */
+    @Nullable
+    public PickResult getResult() {
+        List<PickResult> results = this.results;
+        return results != null && !results.isEmpty() ? results.get(0) : null;
+    }
+
+    public int getTotalImages() {
+        return totalImages;
+    }
+
+    @MainThread
+    public int getCompletedImages() {
+        return completedImages;
+    }
+
+    /**
+     * Runs {@code task} on the main thread once the pick is completed or cancelled, right away if it
+     * already is. Used by the picker to release what the pick holds, not by listeners
+     */
+    @MainThread
+    void setDoneTask(Runnable task) {
+        if (isDone()) {
+            task.run();
+        } else {
+            doneTask = task;
+        }
+    }
+
+    void setTotalImages(int totalImages) {
+        this.totalImages = totalImages;
+    }
+
+    /**
+     * Posts progress to the main thread, allocates nothing if there's no progress listener
+     */
+    void onStageStarted(PickerStage stage) {
+        if (progressListener != null) {
+            PickerExecutors.postToMainThread(() -> notifyProgress(stage));
+        }
+    }
+
+    @MainThread
+    void onImageCompleted() {
+        completedImages++;
+        notifyProgress(PickerStage.DELIVERY);
+    }
+
+    @MainThread
+    void complete(List<PickResult> results) {
+        synchronized (this) {
+            if (isDone()) {
+                return;
+            }
+            this.results = results;
+        }
+        completion.countDown();
+        runDoneTask();
+        notifyComplete();
+    }
+
+    @MainThread
+    private void runDoneTask() {
+        Runnable task = doneTask;
+        doneTask = null;
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    private void notifyProgress(PickerStage stage) {
+        if (progressListener != null && !cancelled) {
+            progressListener.onPickProgress(this, stage, completedImages, totalImages);
+        }
+    }
+
+    private void notifyComplete() {
+        if (completeListener != null) {
+            completeListener.onPickComplete(this);
+        }
+    }
+
+    private List<PickResult> resultsOrThrow() {
+        if (cancelled) {
+            throw new CancellationException("Pick cancelled");
+        }
+        return results;
+    }
+
+    @Override
+    public String toString() {
+        return "PickHandle{" + (cancelled ? "cancelled" : isDone() ? "done" : "running")
+                + ", " + completedImages + "/" + totalImages + " images"
+                + '}';
+    }
+}
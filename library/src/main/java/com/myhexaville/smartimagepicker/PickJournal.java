@@ -0,0 +1,201 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Where a session's pick is and how it was configured, written to the session's directory every
+ * time the pick hands over to another activity and when the activity returns. The OS often kills the
+ * process while the camera, gallery or crop activity is in front, and the journal read back when the
+ * session is created again tells the picker which capture and which imported file the returning
+ * result belongs to, so the pick resumes instead of starting over. A pick killed after the activity
+ * returned but before delivery is processed again from the returned uri. Written to a temp file and renamed over the old one, so a
+ * crash in the middle leaves the previous state. Free of Android types so it can run on a plain JVM.
+ */
+final class PickJournal {
+    /**
+     * Disk cache keys can't start with "journal", so it never clashes with a cached file
+     */
+    static final String FILE_NAME = "journal.pick";
+    private static final String TEMP_FILE_NAME = "journal.pick.tmp";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String STAGE = "stage";
+    private static final String CAMERA_FILE = "camera";
+    private static final String SOURCE_URI = "source";
+    private static final String IMAGE_PATH = "image";
+    private static final String CROP = "crop";
+    private static final String RETURNED = "returned";
+    private static final String CROP_RECT = "rect";
+    private static final String OUTPUT_PATH = "output";
+
+    /**
+     * Activity the pick is waiting for or returned from, {@link PickerStage#CHOOSER},
+     * {@link PickerStage#CAMERA} or {@link PickerStage#CROP}, null when no pick is running
+     */
+    PickerStage stage;
+    /**
+     * The activity returned and the pick is being processed from {@link #sourceUri}, or from
+     * {@link #imagePath} with {@link #cropRect} after the crop activity
+     */
+    boolean returned;
+    /**
+     * Cache key of the capture the camera app writes to
+     */
+    String cameraFile;
+    /**
+     * Picked uri and the local file the crop activity was started with
+     */
+    String sourceUri;
+    String imagePath;
+    boolean withCrop;
+    boolean autoCrop;
+    int aspectRatioX, aspectRatioY;
+    /**
+     * Left, top, right and bottom the crop activity returned, null if it didn't
+     */
+    int[] cropRect;
+    int cropOrientation;
+    /**
+     * File of the last delivered image
+     */
+    String outputPath;
+
+    boolean isWaitingForActivity() {
+        return !returned && isActivityStage();
+    }
+
+    /**
+     * The activity returned but the result wasn't delivered
+     */
+    boolean isProcessing() {
+        return returned && isActivityStage() && sourceUri != null
+                && (stage != PickerStage.CROP || imagePath != null && cropRect != null);
+    }
+
+    private boolean isActivityStage() {
+        return stage == PickerStage.CHOOSER || stage == PickerStage.CAMERA || stage == PickerStage.CROP;
+    }
+
+    /**
+     * Empty journal if there's none or it can't be read
+     */
+    static PickJournal read(File directory) {
+        PickJournal journal = new PickJournal();
+        File file = new File(directory, FILE_NAME);
+        if (!file.exists()) {
+            return journal;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                journal.readLine(line);
+            }
+        } catch (IOException | RuntimeException e) {
+            return new PickJournal();
+        }
+        return journal;
+    }
+
+    private void readLine(String line) throws IOException {
+        String[] parts = line.split(" ", 2);
+        if (parts.length != 2) {
+            throw new IOException("Unexpected journal line: " + line);
+        }
+        String value = parts[1];
+        switch (parts[0]) {
+            case STAGE:
+                stage = PickerStage.valueOf(value);
+                break;
+            case CAMERA_FILE:
+                cameraFile = value;
+                break;
+            case SOURCE_URI:
+                sourceUri = value;
+                break;
+            case IMAGE_PATH:
+                imagePath = value;
+                break;
+            case CROP:
+                String[] crop = value.split(" ");
+                if (crop.length != 4) {
+                    throw new IOException("Unexpected journal line: " + line);
+                }
+                withCrop = Boolean.parseBoolean(crop[0]);
+                autoCrop = Boolean.parseBoolean(crop[1]);
+                aspectRatioX = Integer.parseInt(crop[2]);
+                aspectRatioY = Integer.parseInt(crop[3]);
+                break;
+            case OUTPUT_PATH:
+                outputPath = value;
+                break;
+            case RETURNED:
+                returned = Boolean.parseBoolean(value);
+                break;
+            case CROP_RECT:
+                String[] rect = value.split(" ");
+                if (rect.length != 5) {
+                    throw new IOException("Unexpected journal line: " + line);
+                }
+                cropRect = new int[4];
+                for (int i = 0; i < 4; i++) {
+                    cropRect[i] = Integer.parseInt(rect[i]);
+                }
+                cropOrientation = Integer.parseInt(rect[4]);
+                break;
+            default:
+                throw new IOException("Unexpected journal line: " + line);
+        }
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    void write(File directory) throws IOException {
+        directory.mkdirs();
+        File tempFile = new File(directory, TEMP_FILE_NAME);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8))) {
+            if (stage != null) {
+                writeLine(writer, STAGE, stage.name());
+            }
+            if (returned) {
+                writeLine(writer, RETURNED, "true");
+            }
+            writeLine(writer, CAMERA_FILE, cameraFile);
+            writeLine(writer, SOURCE_URI, sourceUri);
+            writeLine(writer, IMAGE_PATH, imagePath);
+            writeLine(writer, CROP, withCrop + " " + autoCrop + " " + aspectRatioX + " " + aspectRatioY);
+            writeLine(writer, OUTPUT_PATH, outputPath);
+            if (cropRect != null) {
+                writeLine(writer, CROP_RECT, cropRect[0] + " " + cropRect[1] + " " + cropRect[2] + " "
+                        + cropRect[3] + " " + cropOrientation);
+            }
+        }
+        File file = new File(directory, FILE_NAME);
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Couldn't replace " + file);
+            }
+        }
+    }
+
+    @SuppressWarnings("ResultOfMethodCallIgnored")
+    static void delete(File directory) {
+        new File(directory, FILE_NAME).delete();
+    }
+
+    /**
+     * Values are uris and paths, which have no line breaks
+     */
+    private static void writeLine(Writer writer, String key, String value) throws IOException {
+        if (value != null) {
+            writer.write(key + ' ' + value + '\n');
+        }
+    }
+}
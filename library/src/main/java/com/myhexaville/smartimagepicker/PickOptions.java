@@ -0,0 +1,154 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * What the picker was configured to do with a picked image. Copied when a pick starts,
+ * so changing the picker doesn't affect images that are already being processed.
+ */
+final class PickOptions implements Cloneable {
+    boolean withCrop;
+    boolean autoCrop;
+    int aspectRatioX, aspectRatioY;
+    int decodeMaxWidth, decodeMaxHeight;
+    int previewMaxSize;
+    BitmapMemoryCache memoryCache;
+    int maxImages = 1;
+    boolean inAppGallery;
+    OutputFormat outputFormat;
+    int encodeMaxWidth, encodeMaxHeight;
+    int quality;
+    long maxOutputBytes;
+    PickerMetricsListener metricsListener;
+    MemoryLevel memoryLevel = MemoryLevel.NORMAL;
+    int maxCropSize = PickProcessor.MAX_CROP_SIZE;
+    Bitmap.Config decodeConfig = Bitmap.Config.ARGB_8888;
+    DedupIndex dedupIndex;
+    OutputSink outputSink;
+    boolean keepStreamedFile;
+    List<Rendition> renditions;
+    List<Transform> transforms;
+    /**
+     * Metadata kept by the stripping stage, null when metadata isn't stripped
+     */
+    Set<JpegMetadata> keptMetadata;
+    int placeholderComponentsX, placeholderComponentsY;
+    /**
+     * Runs the pick's parallel work, renditions are encoded on it
+     */
+    Executor executor;
+
+    boolean withDecode() {
+        return decodeMaxWidth > 0 && decodeMaxHeight > 0;
+    }
+
+    boolean withEncode() {
+        return outputFormat != null;
+    }
+
+    boolean withTransforms() {
+        return transforms != null && !transforms.isEmpty();
+    }
+
+    boolean withMetadataStripping() {
+        return keptMetadata != null;
+    }
+
+    boolean withPlaceholder() {
+        return placeholderComponentsX > 0 && placeholderComponentsY > 0;
+    }
+
+    boolean withRenditions() {
+        return renditions != null && !renditions.isEmpty();
+    }
+
+    /**
+     * Crop and encode run for this result, so its output isn't just the imported file
+     */
+    boolean hasOutputStages(PickResult result) {
+        return withEncode() || autoCrop || result.cropRect != null || withTransforms() || withMetadataStripping();
+    }
+
+    /**
+     * Dedup key of what crop and encode make out of the content, everything that changes their
+     * output is in it. Letters, digits, dots and dashes only
+     */
+    String outputVariant(PickResult result) {
+        StringBuilder variant = new StringBuilder();
+        if (result.cropRect != null) {
+            variant.append("crop-").append(result.cropRect.left).append('.').append(result.cropRect.top)
+                    .append('.').append(result.cropRect.right).append('.').append(result.cropRect.bottom)
+                    .append('.').append(result.cropOrientation);
+        } else if (autoCrop) {
+            variant.append("auto-").append(aspectRatioX).append('.').append(aspectRatioY);
+        }
+        if (withEncode()) {
+            if (variant.length() > 0) {
+                variant.append('-');
+            }
+            variant.append(outputFormat.name()).append('-').append(encodeMaxWidth).append('.').append(encodeMaxHeight)
+                    .append('.').append(quality).append('.').append(maxOutputBytes);
+        } else {
+            variant.append('-').append(maxCropSize);
+        }
+        if (withTransforms()) {
+            variant.append("-t");
+            for (Transform transform : transforms) {
+                variant.append('.').append(transform.variant());
+            }
+        }
+        if (withMetadataStripping()) {
+            variant.append("-m");
+            for (JpegMetadata metadata : keptMetadata) {
+                variant.append('.').append(metadata.ordinal());
+            }
+        }
+        return variant.toString();
+    }
+
+    boolean isMultiple() {
+        return maxImages > 1;
+    }
+
+    /**
+     * Shrinks decodes for the current memory pressure, call it on a copy.
+     * Compression size isn't touched, it's what the app asked to upload
+     */
+    void applyMemoryLevel(MemoryLevel level) {
+        memoryLevel = level;
+        if (withDecode()) {
+            decodeMaxWidth = SampleSize.scaled(decodeMaxWidth, level.decodeScale);
+            decodeMaxHeight = SampleSize.scaled(decodeMaxHeight, level.decodeScale);
+        }
+        maxCropSize = SampleSize.scaled(PickProcessor.MAX_CROP_SIZE, level.decodeScale);
+        decodeConfig = level.prefersRgb565() ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * For speculative work on a copy: nothing is streamed or measured, renditions and placeholders
+     * that a pick can't find are skipped, and decodes are only done when there's a memory cache to keep them in
+     */
+    void forPrefetch() {
+        outputSink = null;
+        metricsListener = null;
+        renditions = null;
+        placeholderComponentsX = 0;
+        placeholderComponentsY = 0;
+        if (memoryCache == null) {
+            decodeMaxWidth = 0;
+            decodeMaxHeight = 0;
+        }
+    }
+
+    PickOptions copy() {
+        try {
+            return (PickOptions) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
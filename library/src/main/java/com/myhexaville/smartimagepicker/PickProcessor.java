@@ -0,0 +1,734 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stages that run after the camera or gallery app returned: import into the disk cache,
+ * crop, encode and decode. Holds no picker state, so many images can be processed in parallel.
+ * Every stage checks its {@link PickHandle} first and stops if the pick was cancelled.
+ * With a {@link DedupIndex}, content that was already imported or processed the same way is reused.
+ * With an {@link OutputSink} the final bytes are streamed to it, encoded ones while they're compressed.
+ * Renditions are made from one decode of the output, and a {@link Transform} chain runs in place of
+ * crop and encode with one decode and one encode. Metadata of a JPEG that isn't re-encoded is stripped
+ * without decoding it, and a BlurHash placeholder is encoded from a tiny decode of the output.
+ */
+final class PickProcessor {
+    /**
+     * Max crop output size when there's no compression size, so a 48 MP crop still fits in memory
+     */
+    static final int MAX_CROP_SIZE = 4096;
+    private static final int CROP_QUALITY = 95;
+    private static final String IMPORT_VARIANT = "import";
+    private static final AtomicInteger fileSequence = new AtomicInteger();
+
+    private final Context context;
+    private final ImageDiskCache diskCache;
+    private final PickOptions options;
+    private final PickHandle pick;
+
+    PickProcessor(Context context, ImageDiskCache diskCache, PickOptions options, PickHandle pick) {
+        this.context = context.getApplicationContext();
+        this.diskCache = diskCache;
+        this.options = options;
+        this.pick = pick;
+    }
+
+    static boolean needsImport(Uri imageUri) {
+        return ContentResolver.SCHEME_CONTENT.equals(imageUri.getScheme());
+    }
+
+    /**
+     * Unique cache key, several files can be created in the same millisecond
+     */
+    static String newFileName(String prefix, String extension) {
+        return prefix + "-" + System.currentTimeMillis() + "-" + fileSequence.incrementAndGet() + "." + extension;
+    }
+
+    /**
+     * Runs every configured stage for one image, failures are stored in the result
+     */
+    @WorkerThread
+    @NonNull
+    PickResult process(Uri sourceUri, int index) {
+        PickResult result = new PickResult(sourceUri, index);
+        try {
+            Uri imageUri = sourceUri;
+            if (needsImport(sourceUri)) {
+                result.importResult = importContent(sourceUri);
+                result.duplicate = result.importResult.isReused();
+                imageUri = Uri.fromFile(result.importResult.getFile());
+            }
+            result.imageUri = imageUri;
+            result.file = new File(imageUri.getPath());
+        } catch (IOException | RuntimeException e) {
+            result.error = e;
+            return result;
+        }
+        finish(result);
+        return result;
+    }
+
+    boolean hasFinishStages(PickResult result) {
+        return options.hasOutputStages(result) || options.withDecode() || options.outputSink != null
+                || options.withRenditions() || options.withPlaceholder();
+    }
+
+    /**
+     * Stages that run on the final local file, after import and crop. Crop and encode are skipped
+     * if the content was already processed into the same variant
+     */
+    @WorkerThread
+    void finish(PickResult result) {
+        result.memoryLevel = options.memoryLevel;
+        String contentHash = result.getContentHash();
+        String variant = null;
+        if (options.dedupIndex != null && contentHash != null && options.hasOutputStages(result)) {
+            variant = options.outputVariant(result);
+            try {
+                File output = getOutput(contentHash, variant);
+                result.duplicate = output != null;
+                if (output != null) {
+                    result.file = output;
+                    result.imageUri = Uri.fromFile(output);
+                }
+            } catch (IOException e) {
+                result.error = e;
+                return;
+            }
+        }
+        if (variant == null || !result.duplicate) {
+            processOutput(result);
+            if (result.error != null) {
+                return;
+            }
+            boolean hasOutputFile = result.encodeResult == null || result.encodeResult.getFile() != null;
+            if (variant != null && hasOutputFile) {
+                try {
+                    options.dedupIndex.putOutput(contentHash, variant, result.file.getName());
+                } catch (IOException ignored) {
+                    // the same content is processed again next time
+                }
+            }
+        }
+        if (options.withRenditions()) {
+            long start = PickerMetrics.begin(PickerStage.RENDITIONS);
+            try {
+                renditions(result);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                result.error = e;
+            }
+            long bytes = 0;
+            for (EncodeResult rendition : result.getRenditions().values()) {
+                bytes += rendition.getBytes();
+            }
+            PickerMetrics.end(options.metricsListener, PickerStage.RENDITIONS, start, bytes, result.error);
+            if (result.error != null) {
+                return;
+            }
+        }
+        if (options.withPlaceholder()) {
+            long start = PickerMetrics.begin(PickerStage.PLACEHOLDER);
+            try {
+                result.placeholder = placeholder(result.imageUri);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                result.error = e;
+            }
+            PickerMetrics.end(options.metricsListener, PickerStage.PLACEHOLDER, start,
+                    result.placeholder != null ? result.placeholder.length() : 0, result.error);
+            if (result.error != null) {
+                return;
+            }
+        }
+        if (options.outputSink != null && !result.streamed) {
+            streamFile(result);
+            if (result.error != null) {
+                return;
+            }
+        }
+        if (options.withDecode()) {
+            long start = PickerMetrics.begin(PickerStage.DECODE);
+            try {
+                result.bitmap = decode(result.imageUri);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                result.error = e;
+            }
+            PickerMetrics.end(options.metricsListener, PickerStage.DECODE, start,
+                    result.bitmap != null ? BitmapPool.allocationSize(result.bitmap) : 0, result.error);
+        }
+    }
+
+    /**
+     * Crop, encode and metadata stripping stages, failures are stored in the result
+     */
+    @WorkerThread
+    private void processOutput(PickResult result) {
+        if (options.withTransforms()) {
+            long start = PickerMetrics.begin(PickerStage.TRANSFORM);
+            try {
+                transform(result);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                result.error = e;
+            }
+            PickerMetrics.end(options.metricsListener, PickerStage.TRANSFORM, start,
+                    result.encodeResult != null ? result.encodeResult.getBytes() : 0, result.error);
+            return;
+        }
+        boolean withCrop = options.autoCrop || result.cropRect != null;
+        if (withCrop) {
+            long start = PickerMetrics.begin(PickerStage.CROP_DECODE);
+            try {
+                crop(result);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                result.error = e;
+            }
+            PickerMetrics.end(options.metricsListener, PickerStage.CROP_DECODE, start,
+                    result.file != null && result.error == null ? result.file.length() : 0, result.error);
+            if (result.error != null) {
+                return;
+            }
+        }
+        if (options.withEncode() && result.encodeResult == null) {
+            long start = PickerMetrics.begin(PickerStage.ENCODE);
+            try {
+                encode(result);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                result.error = e;
+            }
+            PickerMetrics.end(options.metricsListener, PickerStage.ENCODE, start,
+                    result.encodeResult != null ? result.encodeResult.getBytes() : 0, result.error);
+        }
+        // crop and encode compress a bitmap, which writes no metadata
+        if (options.withMetadataStripping() && !withCrop && result.encodeResult == null) {
+            long start = PickerMetrics.begin(PickerStage.STRIP);
+            try {
+                strip(result);
+            } catch (IOException | RuntimeException e) {
+                result.error = e;
+            }
+            PickerMetrics.end(options.metricsListener, PickerStage.STRIP, start,
+                    result.stripResult != null ? result.stripResult.getBytes() : 0, result.error);
+        }
+    }
+
+    /**
+     * Decodes only the crop rectangle, the one picked in the crop activity or a centered one for
+     * auto crop, and writes it to the disk cache. With compression it's encoded right away to the
+     * compression format and size, so the encode stage doesn't decode it again
+     */
+    @WorkerThread
+    private void crop(PickResult result) throws IOException {
+        startStage(PickerStage.CROP_DECODE);
+        BitmapPool pool = getPool();
+        boolean withEncode = options.withEncode();
+        int maxWidth = withEncode ? options.encodeMaxWidth : options.maxCropSize;
+        int maxHeight = withEncode ? options.encodeMaxHeight : options.maxCropSize;
+        Bitmap bitmap;
+        if (result.cropRect != null) {
+            bitmap = RegionCropper.decode(context, result.imageUri, result.cropRect, result.cropOrientation,
+                    maxWidth, maxHeight, pool);
+        } else {
+            int orientation = BitmapDecoder.readOrientation(context, result.imageUri);
+            bitmap = RegionCropper.decodeCenterCrop(context, result.imageUri, orientation,
+                    options.aspectRatioX, options.aspectRatioY, maxWidth, maxHeight, pool);
+        }
+        EncodeResult encoded = withEncode
+                ? write(result, bitmap, "encoded", options.outputFormat, options.quality, options.maxOutputBytes, true, pool)
+                : write(result, bitmap, "crop", OutputFormat.JPEG, CROP_QUALITY, 0, false, pool);
+        if (withEncode) {
+            result.encodeResult = encoded;
+        }
+    }
+
+    /**
+     * Runs the transform chain, with auto crop or the crop activity's rectangle in front of it and
+     * the compression size at its end, as one region decode, one draw and one encode
+     */
+    @WorkerThread
+    private void transform(PickResult result) throws IOException {
+        startStage(PickerStage.TRANSFORM);
+        BitmapPool pool = getPool();
+        boolean withEncode = options.withEncode();
+        List<Transform> transforms = options.transforms;
+        int orientation = result.cropRect != null
+                ? result.cropOrientation
+                : BitmapDecoder.readOrientation(context, result.imageUri);
+        if (options.autoCrop && result.cropRect == null) {
+            transforms = new ArrayList<>(transforms);
+            transforms.add(0, Transform.centerCrop(options.aspectRatioX, options.aspectRatioY));
+        }
+
+        long decodeStart = System.nanoTime();
+        TransformPlan plan;
+        Bitmap sampled;
+        BitmapRegionDecoder decoder = RegionCropper.openDecoder(context, result.imageUri);
+        try {
+            plan = TransformPlan.plan(decoder.getWidth(), decoder.getHeight(), result.cropRect, orientation,
+                    transforms,
+                    withEncode ? options.encodeMaxWidth : options.maxCropSize,
+                    withEncode ? options.encodeMaxHeight : options.maxCropSize);
+            sampled = RegionCropper.decodeRegion(decoder, result.imageUri, plan.region, plan.sampleSize, pool);
+        } finally {
+            decoder.recycle();
+        }
+        long decodeNanos = System.nanoTime() - decodeStart;
+
+        pick.throwIfCancelled();
+        long drawStart = System.nanoTime();
+        Bitmap output = draw(sampled, plan, pool);
+        long drawNanos = System.nanoTime() - drawStart;
+
+        // Bitmap.compress writes no metadata, stripping it is free here
+        EncodeResult encoded = withEncode
+                ? write(result, output, "transformed", options.outputFormat, options.quality, options.maxOutputBytes, true, pool)
+                : write(result, output, "transformed", OutputFormat.JPEG, CROP_QUALITY, 0, true, pool);
+        result.encodeResult = encoded;
+        result.transformResult = new TransformResult(plan.toString(), decodeNanos, drawNanos, encoded.getDurationNanos());
+    }
+
+    /**
+     * Orients and scales the sampled region into the output with one matrix, then draws the
+     * watermarks on the same canvas. The sampled bitmap is released
+     */
+    @NonNull
+    private static Bitmap draw(Bitmap sampled, TransformPlan plan, @Nullable BitmapPool pool) {
+        Bitmap output = pool != null ? pool.get(plan.outputWidth, plan.outputHeight, Bitmap.Config.ARGB_8888) : null;
+        if (output != null) {
+            output.reconfigure(plan.outputWidth, plan.outputHeight, Bitmap.Config.ARGB_8888);
+            output.eraseColor(Color.TRANSPARENT);
+        } else {
+            output = Bitmap.createBitmap(plan.outputWidth, plan.outputHeight, Bitmap.Config.ARGB_8888);
+        }
+        try {
+            Matrix matrix = new Matrix();
+            BitmapDecoder.applyOrientation(matrix, plan.orientation);
+            RectF bounds = new RectF(0, 0, sampled.getWidth(), sampled.getHeight());
+            matrix.mapRect(bounds);
+            matrix.postTranslate(-bounds.left, -bounds.top);
+            matrix.postScale(plan.outputWidth / bounds.width(), plan.outputHeight / bounds.height());
+            Canvas canvas = new Canvas(output);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+            canvas.drawBitmap(sampled, matrix, paint);
+            for (Bitmap watermark : plan.watermarks) {
+                canvas.drawBitmap(watermark, null, watermarkBounds(watermark, plan), paint);
+            }
+        } finally {
+            if (pool != null) {
+                pool.put(sampled);
+            } else {
+                sampled.recycle();
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Bottom right, at most a quarter of the output's width, with a margin of 1/32 of its short side
+     */
+    private static RectF watermarkBounds(Bitmap watermark, TransformPlan plan) {
+        float scale = Math.min(1f, plan.outputWidth / 4f / watermark.getWidth());
+        float width = watermark.getWidth() * scale;
+        float height = watermark.getHeight() * scale;
+        float margin = Math.min(plan.outputWidth, plan.outputHeight) / 32f;
+        float right = plan.outputWidth - margin;
+        float bottom = plan.outputHeight - margin;
+        return new RectF(right - width, bottom - height, right, bottom);
+    }
+
+    /**
+     * Re-encodes the image into the disk cache, and points the result at the new file
+     */
+    @WorkerThread
+    private void encode(PickResult result) throws IOException {
+        startStage(PickerStage.ENCODE);
+        BitmapPool pool = getPool();
+        Bitmap bitmap = BitmapDecoder.decode(context, result.imageUri,
+                options.encodeMaxWidth, options.encodeMaxHeight, pool);
+        result.encodeResult = write(result, bitmap, "encoded", options.outputFormat, options.quality,
+                options.maxOutputBytes, true, pool);
+    }
+
+    /**
+     * Copies the JPEG into the disk cache without the metadata that isn't kept, and points the result
+     * at the copy. Pixels aren't decoded, the compressed data is copied as it is. Other formats are
+     * left as they are
+     */
+    @WorkerThread
+    private void strip(PickResult result) throws IOException {
+        startStage(PickerStage.STRIP);
+        long start = System.nanoTime();
+        String key = newFileName("stripped", OutputFormat.JPEG.extension);
+        File target = diskCache.newFile(key);
+        int removedSegments;
+        try (FileInputStream in = new FileInputStream(result.file);
+             FileOutputStream out = new FileOutputStream(target)) {
+            removedSegments = JpegMetadataStripper.strip(in.getChannel(), out.getChannel(), options.keptMetadata, pick);
+        } catch (IOException | RuntimeException e) {
+            diskCache.abort(key);
+            throw e;
+        }
+        if (removedSegments < 0) {
+            diskCache.abort(key);
+            return;
+        }
+        diskCache.commit(key);
+        long bytes = target.length();
+        result.stripResult = new StripResult(target, bytes, result.file.length() - bytes, removedSegments,
+                System.nanoTime() - start);
+        result.file = target;
+        result.imageUri = Uri.fromFile(target);
+    }
+
+    /**
+     * Decodes the output once, to fit every rendition, and scales each rendition from the next
+     * bigger one instead of from the full decode. Renditions are encoded in parallel on the pick's
+     * executor, and this thread runs the ones no other thread took yet, so a busy pool can't stall it
+     */
+    @WorkerThread
+    private void renditions(PickResult result) throws IOException {
+        startStage(PickerStage.RENDITIONS);
+        List<Rendition> renditions = options.renditions;
+        int decodeWidth = 0;
+        int decodeHeight = 0;
+        for (Rendition rendition : renditions) {
+            decodeWidth = Math.max(decodeWidth, Math.min(rendition.getMaxWidth(), options.maxCropSize));
+            decodeHeight = Math.max(decodeHeight, Math.min(rendition.getMaxHeight(), options.maxCropSize));
+        }
+        BitmapPool pool = getPool();
+        Bitmap decoded = BitmapDecoder.decode(context, result.imageUri, decodeWidth, decodeHeight, pool);
+        int count = renditions.size();
+        // the same aspect ratio for all, so the bigger scale is bigger in both dimensions
+        List<Integer> order = new ArrayList<>(count);
+        float[] scales = new float[count];
+        for (int i = 0; i < count; i++) {
+            Rendition rendition = renditions.get(i);
+            scales[i] = Math.min(1f, SampleSize.fitScale(decoded.getWidth(), decoded.getHeight(),
+                    rendition.getMaxWidth(), rendition.getMaxHeight()));
+            order.add(i);
+        }
+        Collections.sort(order, (a, b) -> Float.compare(scales[b], scales[a]));
+
+        Bitmap[] bitmaps = new Bitmap[count];
+        Map<String, EncodeResult> encoded = new LinkedHashMap<>();
+        // bitmaps are only released once no other thread encodes them anymore
+        boolean settled = true;
+        try {
+            Bitmap previous = decoded;
+            for (int i : order) {
+                int width = Math.max(1, SampleSize.scaled(decoded.getWidth(), scales[i]));
+                int height = Math.max(1, SampleSize.scaled(decoded.getHeight(), scales[i]));
+                if (width != previous.getWidth() || height != previous.getHeight()) {
+                    previous = Bitmap.createScaledBitmap(previous, width, height, true);
+                }
+                bitmaps[i] = previous;
+            }
+            AtomicBoolean failed = new AtomicBoolean();
+            List<FutureTask<EncodeResult>> tasks = new ArrayList<>(count);
+            settled = false;
+            for (int i = 0; i < count; i++) {
+                Rendition rendition = renditions.get(i);
+                Bitmap bitmap = bitmaps[i];
+                FutureTask<EncodeResult> task = new FutureTask<>(
+                        () -> failed.get() ? null : writeRendition(rendition, bitmap));
+                tasks.add(task);
+                if (options.executor != null && i > 0) {
+                    options.executor.execute(task);
+                }
+            }
+            Throwable failure = null;
+            for (int i = 0; i < count; i++) {
+                FutureTask<EncodeResult> task = tasks.get(i);
+                task.run();
+                try {
+                    encoded.put(renditions.get(i).getName(), task.get());
+                } catch (ExecutionException e) {
+                    failed.set(true);
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            settled = true;
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new IOException("Couldn't encode renditions", failure);
+            }
+            result.renditions = encoded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding renditions", e);
+        } finally {
+            if (settled) {
+                releaseRenditions(decoded, bitmaps, pool);
+            }
+        }
+    }
+
+    @NonNull
+    private EncodeResult writeRendition(Rendition rendition, Bitmap bitmap) throws IOException {
+        String key = newFileName("rendition", rendition.getFormat().extension);
+        try {
+            EncodeResult encoded = ImageEncoder.encode(bitmap, rendition.getFormat(), rendition.getQuality(), 0,
+                    diskCache.newFile(key), pick);
+            diskCache.commit(key);
+            return encoded;
+        } catch (IOException | RuntimeException e) {
+            diskCache.abort(key);
+            throw e;
+        }
+    }
+
+    /**
+     * Renditions at the decoded size, or at the size of the next bigger one, share its bitmap
+     */
+    private static void releaseRenditions(Bitmap decoded, Bitmap[] bitmaps, BitmapPool pool) {
+        Set<Bitmap> released = Collections.newSetFromMap(new IdentityHashMap<>());
+        released.add(decoded);
+        for (Bitmap bitmap : bitmaps) {
+            if (bitmap != null) {
+                released.add(bitmap);
+            }
+        }
+        for (Bitmap bitmap : released) {
+            if (pool != null) {
+                pool.put(bitmap);
+            } else {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Decodes the output to fit {@link BlurHashEncoder#MAX_SIZE}, which subsamples it while decoding,
+     * and encodes the pixels into a BlurHash
+     */
+    @WorkerThread
+    @NonNull
+    private String placeholder(Uri imageUri) throws IOException {
+        startStage(PickerStage.PLACEHOLDER);
+        BitmapPool pool = getPool();
+        Bitmap bitmap = BitmapDecoder.decode(context, imageUri, BlurHashEncoder.MAX_SIZE, BlurHashEncoder.MAX_SIZE,
+                pool, Bitmap.Config.ARGB_8888);
+        try {
+            BlurHashEncoder encoder = BlurHashEncoder.get();
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            bitmap.getPixels(encoder.pixels, 0, width, 0, 0, width, height);
+            return encoder.encode(width, height, options.placeholderComponentsX, options.placeholderComponentsY);
+        } finally {
+            if (pool != null) {
+                pool.put(bitmap);
+            } else {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Encodes the bitmap into a new cache file and releases it, the result points at the new file.
+     * The final output goes to the output sink as it's compressed, and only into a file if it's kept,
+     * otherwise the result keeps pointing at the file it was encoded from
+     */
+    @NonNull
+    private EncodeResult write(PickResult result, Bitmap bitmap, String prefix, OutputFormat format,
+                               int quality, long maxBytes, boolean finalOutput, BitmapPool pool) throws IOException {
+        boolean toSink = finalOutput && options.outputSink != null;
+        String key = !toSink || options.keepStreamedFile ? newFileName(prefix, format.extension) : null;
+        EncodeResult encoded;
+        try {
+            File target = key != null ? diskCache.newFile(key) : null;
+            if (toSink) {
+                try (WritableByteChannel sink = openSink(result)) {
+                    encoded = ImageEncoder.encode(bitmap, format, quality, maxBytes, target, sink, pick);
+                }
+                result.streamed = true;
+                result.streamedBytes = encoded.getBytes();
+            } else {
+                encoded = ImageEncoder.encode(bitmap, format, quality, maxBytes, target, pick);
+            }
+            if (key != null) {
+                diskCache.commit(key);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (key != null) {
+                diskCache.abort(key);
+            }
+            throw e;
+        } finally {
+            if (pool != null) {
+                pool.put(bitmap);
+            } else {
+                bitmap.recycle();
+            }
+        }
+        if (encoded.getFile() != null) {
+            result.file = encoded.getFile();
+            result.imageUri = Uri.fromFile(result.file);
+        }
+        return encoded;
+    }
+
+    /**
+     * Streams the result's file to the output sink, for outputs that weren't encoded on the way
+     */
+    @WorkerThread
+    private void streamFile(PickResult result) {
+        long start = PickerMetrics.begin(PickerStage.STREAM);
+        try {
+            startStage(PickerStage.STREAM);
+            try (FileInputStream in = new FileInputStream(result.file);
+                 WritableByteChannel sink = openSink(result)) {
+                result.streamedBytes = ChannelCopier.copy(in.getChannel(), sink, pick);
+            }
+            result.streamed = true;
+        } catch (IOException | RuntimeException e) {
+            result.error = e;
+        }
+        PickerMetrics.end(options.metricsListener, PickerStage.STREAM, start, result.streamedBytes, result.error);
+    }
+
+    @NonNull
+    private WritableByteChannel openSink(PickResult result) throws IOException {
+        WritableByteChannel sink = options.outputSink.open(result);
+        if (sink == null) {
+            throw new IOException("Output sink returned no channel for " + result.getSourceUri());
+        }
+        return sink;
+    }
+
+    private void startStage(PickerStage stage) {
+        pick.throwIfCancelled();
+        pick.onStageStarted(stage);
+    }
+
+    private BitmapPool getPool() {
+        return options.memoryCache != null ? options.memoryCache.getPool() : null;
+    }
+
+    /**
+     * Copies content:// image into the disk cache. With dedup an unchanged provider uri isn't read
+     * at all, and a copy of content that's already in the cache is dropped for the earlier one
+     */
+    @WorkerThread
+    @NonNull
+    ImportResult importContent(Uri sourceUri) throws IOException {
+        startStage(PickerStage.IMPORT);
+        long start = PickerMetrics.begin(PickerStage.IMPORT);
+        DedupIndex dedupIndex = options.dedupIndex;
+        String preKey = null;
+        MessageDigest digest = null;
+        String key = newFileName("import", ContentImporter.extensionFor(context, sourceUri));
+        ImportResult result;
+        try {
+            if (dedupIndex != null) {
+                preKey = ContentImporter.preKey(context, sourceUri);
+                String contentHash = preKey != null ? dedupIndex.getContentHash(preKey) : null;
+                File imported = contentHash != null ? getOutput(contentHash, IMPORT_VARIANT) : null;
+                if (imported != null) {
+                    result = new ImportResult(imported, 0, System.nanoTime() - start, false);
+                    result.contentHash = contentHash;
+                    result.reused = true;
+                    PickerMetrics.end(options.metricsListener, PickerStage.IMPORT, start, 0, null);
+                    return result;
+                }
+                digest = DedupIndex.newDigest();
+            }
+            result = ContentImporter.importImage(context, sourceUri, diskCache.newFile(key), digest, pick);
+            diskCache.commit(key);
+            if (digest != null) {
+                result = deduplicate(result, key, preKey, DedupIndex.toHex(digest.digest()));
+            }
+        } catch (IOException | RuntimeException e) {
+            PickerMetrics.end(options.metricsListener, PickerStage.IMPORT, start, 0, e);
+            diskCache.abort(key);
+            throw e;
+        }
+        PickerMetrics.end(options.metricsListener, PickerStage.IMPORT, start, result.getBytesCopied(), null);
+        return result;
+    }
+
+    /**
+     * Records the imported content, or swaps the new copy for the one that's already in the cache
+     */
+    @NonNull
+    private ImportResult deduplicate(ImportResult imported, String key, String preKey, String contentHash) throws IOException {
+        DedupIndex dedupIndex = options.dedupIndex;
+        if (preKey != null) {
+            dedupIndex.putContentHash(preKey, contentHash);
+        }
+        File existing = getOutput(contentHash, IMPORT_VARIANT);
+        ImportResult result;
+        if (existing != null && !existing.getName().equals(key)) {
+            diskCache.remove(key);
+            result = new ImportResult(existing, imported.getBytesCopied(), imported.getDurationNanos(), imported.isZeroCopy());
+            result.reused = true;
+        } else {
+            dedupIndex.putOutput(contentHash, IMPORT_VARIANT, key);
+            result = imported;
+        }
+        result.contentHash = contentHash;
+        return result;
+    }
+
+    /**
+     * Cached file the content was processed into for {@code variant}, or null. Entries of files the
+     * disk cache evicted are dropped
+     */
+    private File getOutput(String contentHash, String variant) throws IOException {
+        String key = options.dedupIndex.getOutput(contentHash, variant);
+        if (key == null) {
+            return null;
+        }
+        File file = diskCache.get(key);
+        if (file == null) {
+            options.dedupIndex.removeOutput(contentHash, variant);
+        }
+        return file;
+    }
+
+    @WorkerThread
+    @NonNull
+    Bitmap decode(Uri imageUri) throws IOException {
+        startStage(PickerStage.DECODE);
+        if (options.memoryCache != null) {
+            return options.memoryCache.getOrDecode(context, imageUri,
+                    options.decodeMaxWidth, options.decodeMaxHeight, options.decodeConfig);
+        }
+        return BitmapDecoder.decode(context, imageUri, options.decodeMaxWidth, options.decodeMaxHeight,
+                null, options.decodeConfig);
+    }
+}
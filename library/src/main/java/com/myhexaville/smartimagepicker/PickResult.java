@@ -0,0 +1,196 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Everything the picker produced for one picked image. Stages that weren't configured
+ * leave their fields null, and if a stage failed {@link #getError()} says why.
+ */
+public class PickResult {
+    private final Uri sourceUri;
+    private final int index;
+    Uri imageUri;
+    File file;
+    Bitmap bitmap;
+    ImportResult importResult;
+    EncodeResult encodeResult;
+    TransformResult transformResult;
+    StripResult stripResult;
+    Throwable error;
+    Rect cropRect;
+    int cropOrientation;
+    MemoryLevel memoryLevel = MemoryLevel.NORMAL;
+    boolean duplicate;
+    boolean streamed;
+    long streamedBytes;
+    Map<String, EncodeResult> renditions;
+    String placeholder;
+
+    PickResult(Uri sourceUri, int index) {
+        this.sourceUri = sourceUri;
+        this.index = index;
+    }
+
+    /**
+     * Uri returned by the camera or gallery app
+     */
+    public Uri getSourceUri() {
+        return sourceUri;
+    }
+
+    /**
+     * Position of this image in the picked batch, 0 for single picks
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Uri of the library owned file, same as {@link #getFile()}
+     */
+    @Nullable
+    public Uri getImageUri() {
+        return imageUri;
+    }
+
+    @Nullable
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Decoded bitmap if {@link ImagePicker#setWithImageDecode} was set
+     */
+    @Nullable
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    /**
+     * Import cost, null if the image didn't need to be copied
+     */
+    @Nullable
+    public ImportResult getImportResult() {
+        return importResult;
+    }
+
+    /**
+     * Bytes, quality and time of the encode stage if {@link ImagePicker#setWithImageCompression} was set
+     */
+    @Nullable
+    public EncodeResult getEncodeResult() {
+        return encodeResult;
+    }
+
+    /**
+     * Plan and pass timings of {@link ImagePicker#setWithTransforms}, null without transforms
+     */
+    @Nullable
+    public TransformResult getTransformResult() {
+        return transformResult;
+    }
+
+    /**
+     * What {@link ImagePicker#setWithMetadataStripping} removed, null if it's off or the output
+     * was re-encoded, which leaves metadata out anyway
+     */
+    @Nullable
+    public StripResult getStripResult() {
+        return stripResult;
+    }
+
+    /**
+     * Every rendition of {@link ImagePicker#setWithRenditions} by name, in the order they were
+     * declared, with its file, size and bytes. Empty without renditions
+     */
+    @NonNull
+    public Map<String, EncodeResult> getRenditions() {
+        return renditions != null ? Collections.unmodifiableMap(renditions) : Collections.emptyMap();
+    }
+
+    @Nullable
+    public EncodeResult getRendition(String name) {
+        return renditions != null ? renditions.get(name) : null;
+    }
+
+    /**
+     * BlurHash of the output if {@link ImagePicker#setWithPlaceholder} was set, send it with the
+     * upload so a feed can draw a blurred placeholder while the image loads
+     */
+    @Nullable
+    public String getPlaceholder() {
+        return placeholder;
+    }
+
+    /**
+     * True if the final bytes were written to the {@link OutputSink} of {@link ImagePicker#setWithOutputSink}
+     */
+    public boolean isStreamed() {
+        return streamed;
+    }
+
+    public long getStreamedBytes() {
+        return streamedBytes;
+    }
+
+    /**
+     * True if the same content was picked and processed the same way before, {@link #getFile()} is
+     * that earlier output and nothing was imported, cropped or encoded again, so an upload can be
+     * skipped too. {@link #getEncodeResult()} is null then. Only with {@link ImagePicker#setWithDeduplication}
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
+    /**
+     * SHA-256 of the picked content as hex, null without {@link ImagePicker#setWithDeduplication}
+     * or if the image didn't need to be imported
+     */
+    @Nullable
+    public String getContentHash() {
+        return importResult != null ? importResult.getContentHash() : null;
+    }
+
+    /**
+     * Memory pressure when the image was processed, decodes are smaller above {@link MemoryLevel#NORMAL}
+     */
+    public MemoryLevel getMemoryLevel() {
+        return memoryLevel;
+    }
+
+    @Nullable
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return "PickResult{" +
+                "sourceUri=" + sourceUri +
+                ", index=" + index +
+                ", imageUri=" + imageUri +
+                ", importResult=" + importResult +
+                ", encodeResult=" + encodeResult +
+                ", transformResult=" + transformResult +
+                ", stripResult=" + stripResult +
+                ", renditions=" + renditions +
+                ", placeholder=" + placeholder +
+                ", memoryLevel=" + memoryLevel +
+                ", duplicate=" + duplicate +
+                ", streamedBytes=" + streamedBytes +
+                ", error=" + error +
+                '}';
+    }
+}
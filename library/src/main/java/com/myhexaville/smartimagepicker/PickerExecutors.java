@@ -0,0 +1,104 @@
+package com.myhexaville.smartimagepicker;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads used by the picker: one background executor for disk cache bookkeeping and prewarming,
+ * a worker pool sized to the core count shared by the picks of every session, two threads for
+ * gallery thumbnails, one lowest priority thread for prefetching recent images, and the main
+ * thread for delivering results to listeners.
+ */
+final class PickerExecutors {
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static ExecutorService background;
+    private static ThreadPoolExecutor workers;
+    private static ThreadPoolExecutor thumbnails;
+    private static ThreadPoolExecutor prefetch;
+
+    private PickerExecutors() {
+    }
+
+    static synchronized ExecutorService background() {
+        if (background == null) {
+            background = Executors.newSingleThreadExecutor(newThreadFactory("SmartImagePicker", Process.THREAD_PRIORITY_BACKGROUND));
+        }
+        return background;
+    }
+
+    static synchronized ExecutorService workers() {
+        if (workers == null) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), newThreadFactory("SmartImagePicker-worker", Process.THREAD_PRIORITY_BACKGROUND));
+            workers.allowCoreThreadTimeOut(true);
+        }
+        return workers;
+    }
+
+    /**
+     * Newest request first, so after a fling the cells on screen load before the ones scrolled past
+     */
+    static synchronized ThreadPoolExecutor thumbnails() {
+        if (thumbnails == null) {
+            thumbnails = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+                    new LifoQueue(), newThreadFactory("SmartImagePicker-thumbnail", Process.THREAD_PRIORITY_BACKGROUND));
+            thumbnails.allowCoreThreadTimeOut(true);
+        }
+        return thumbnails;
+    }
+
+    /**
+     * Speculative work runs a whole pick per image, so it gets its own thread below everything else
+     * instead of holding up cache bookkeeping on the background executor or picks on the workers
+     */
+    static synchronized ThreadPoolExecutor prefetch() {
+        if (prefetch == null) {
+            prefetch = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), newThreadFactory("SmartImagePicker-prefetch", Process.THREAD_PRIORITY_LOWEST));
+            prefetch.allowCoreThreadTimeOut(true);
+        }
+        return prefetch;
+    }
+
+    private static final class LifoQueue extends LinkedBlockingDeque<Runnable> {
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    }
+
+    private static ThreadFactory newThreadFactory(String name, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(priority);
+                runnable.run();
+            }, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    static void postToMainThread(Runnable runnable) {
+        mainHandler.post(runnable);
+    }
+
+    static void postToMainThreadDelayed(Runnable runnable, long delayMillis) {
+        mainHandler.postDelayed(runnable, delayMillis);
+    }
+
+    static void removeFromMainThread(Runnable runnable) {
+        mainHandler.removeCallbacks(runnable);
+    }
+}
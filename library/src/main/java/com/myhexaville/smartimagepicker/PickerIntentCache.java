@@ -0,0 +1,97 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.provider.MediaStore;
+
+import com.theartofdev.edmodo.cropper.CropImage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Resolved gallery intents and camera availability, so a tap on "choose picture" doesn't have to
+ * query the {@link PackageManager}. Cleared when an app is installed, updated or removed.
+ */
+final class PickerIntentCache {
+    private static List<Intent> galleryIntents;
+    private static Boolean hasCameraApp;
+    private static boolean receiverRegistered;
+
+    private PickerIntentCache() {
+    }
+
+    /**
+     * Returns copies of the cached intents, callers are free to add extras
+     */
+    static List<Intent> getGalleryIntents(Context context) {
+        List<Intent> intents;
+        synchronized (PickerIntentCache.class) {
+            intents = galleryIntents;
+        }
+        if (intents == null) {
+            intents = resolveGalleryIntents(context.getPackageManager());
+            synchronized (PickerIntentCache.class) {
+                galleryIntents = intents;
+                registerReceiver(context);
+            }
+        }
+        List<Intent> copies = new ArrayList<>(intents.size());
+        for (Intent intent : intents) {
+            copies.add(new Intent(intent));
+        }
+        return copies;
+    }
+
+    static boolean hasCameraApp(Context context) {
+        Boolean hasCamera;
+        synchronized (PickerIntentCache.class) {
+            hasCamera = hasCameraApp;
+        }
+        if (hasCamera == null) {
+            hasCamera = new Intent(MediaStore.ACTION_IMAGE_CAPTURE).resolveActivity(context.getPackageManager()) != null;
+            synchronized (PickerIntentCache.class) {
+                hasCameraApp = hasCamera;
+                registerReceiver(context);
+            }
+        }
+        return hasCamera;
+    }
+
+    static synchronized void invalidate() {
+        galleryIntents = null;
+        hasCameraApp = null;
+    }
+
+    private static List<Intent> resolveGalleryIntents(PackageManager packageManager) {
+        List<Intent> intents = CropImage.getGalleryIntents(packageManager, Intent.ACTION_GET_CONTENT, false);
+        if (intents.size() == 0) {
+            // if no intents found for get-content try pick intent action (Huawei P9).
+            intents = CropImage.getGalleryIntents(packageManager, Intent.ACTION_PICK, false);
+        }
+        return Collections.unmodifiableList(intents);
+    }
+
+    private static void registerReceiver(Context context) {
+        if (receiverRegistered) {
+            return;
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+        receiverRegistered = true;
+    }
+}
@@ -0,0 +1,53 @@
+package com.myhexaville.smartimagepicker;
+
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Times picker stages. Start times are plain nanos and nothing is allocated unless a
+ * {@link PickerMetricsListener} is installed, so the calls can stay in hot paths.
+ */
+final class PickerMetrics {
+    private static final boolean TRACE_SUPPORTED = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    private PickerMetrics() {
+    }
+
+    /**
+     * Opens a trace section for a stage that runs on the current thread, pair with
+     * {@link #end(PickerMetricsListener, PickerStage, long, long, Throwable)} on the same thread
+     */
+    static long begin(PickerStage stage) {
+        if (TRACE_SUPPORTED) {
+            Trace.beginSection(stage.traceName);
+        }
+        return System.nanoTime();
+    }
+
+    static void end(@Nullable PickerMetricsListener listener, PickerStage stage, long startNanos,
+                    long bytes, @Nullable Throwable error) {
+        if (TRACE_SUPPORTED) {
+            Trace.endSection();
+        }
+        report(listener, stage, startNanos, bytes, error);
+    }
+
+    /**
+     * Reports a stage that happened outside the library, like another activity, without tracing it
+     */
+    static void report(@Nullable PickerMetricsListener listener, PickerStage stage, long startNanos,
+                       long bytes, @Nullable Throwable error) {
+        if (listener != null && startNanos != 0) {
+            listener.onStageCompleted(stage, System.nanoTime() - startNanos, bytes, error);
+        }
+    }
+
+    static void reportCanceled(@Nullable PickerMetricsListener listener, PickerStage stage, long startNanos) {
+        if (listener != null && startNanos != 0) {
+            report(listener, stage, startNanos, 0, new CancellationException(stage + " canceled"));
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.myhexaville.smartimagepicker;
+
+import android.support.annotation.Nullable;
+
+public interface PickerMetricsListener {
+    /**
+     * Called on the thread the stage ran on, main thread or one of the library's background
+     * threads, so keep it cheap and thread safe.
+     *
+     * @param bytes bytes the stage read or wrote, 0 if it doesn't apply
+     * @param error why the stage failed, {@link java.util.concurrent.CancellationException}
+     *              if the user canceled it, null if it succeeded
+     */
+    void onStageCompleted(PickerStage stage, long durationNanos, long bytes, @Nullable Throwable error);
+}
@@ -0,0 +1,184 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.theartofdev.edmodo.cropper.CropImage.CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE;
+import static com.theartofdev.edmodo.cropper.CropImage.CROP_IMAGE_ACTIVITY_REQUEST_CODE;
+import static com.theartofdev.edmodo.cropper.CropImage.PICK_IMAGE_CHOOSER_REQUEST_CODE;
+
+/**
+ * State of one picker slot, e.g. one photo field of a form. Every session has its own cache
+ * directory with its own journal and budget, its own dedup index, its own request codes and its own
+ * pending camera capture, so several sessions can pick and process at the same time.
+ * <p>
+ * Sessions live for the process, so a new {@link ImagePicker} for the same slot after the activity
+ * was recreated still finds the camera file it's waiting for. When the process was killed in the
+ * meantime, the session's {@link PickJournal} tells it instead, read on the background executor
+ * when the session is created. Session 0 keeps the directory and request codes the library always used.
+ */
+final class PickerSession {
+    static final int DEFAULT_SESSION = 0;
+    static final int MAX_SESSION = 1000;
+    private static final String CACHE_DIR_NAME = "smart-image-picker";
+    private static final String DEDUP_INDEX_NAME = "smart-image-picker-dedup";
+    private static final String SESSIONS_DIR_NAME = "smart-image-picker-sessions";
+    /**
+     * Above the cropper's own codes, sessions up to {@link #MAX_SESSION} stay in the 16 bits
+     * support fragments allow
+     */
+    private static final int SESSION_REQUEST_CODE_BASE = 0x2000;
+    private static final int REQUEST_CODES_PER_SESSION = 8;
+
+    private static final SparseArray<PickerSession> sessions = new SparseArray<>();
+
+    final int id;
+    final File directory;
+    final File dedupIndexFile;
+    final int chooserRequestCode;
+    final int cropRequestCode;
+    final int cameraPermissionRequestCode;
+    final int chooserWithCameraPermissionRequestCode;
+    final int chooserPermissionRequestCode;
+    /**
+     * Cache key of the camera output the camera app was started with, null if there's none
+     */
+    final AtomicReference<String> pendingCameraFile = new AtomicReference<>();
+    /**
+     * Fields below are main thread only and set once the journal was read
+     */
+    private boolean restored;
+    private List<Runnable> afterRestore = new ArrayList<>();
+    /**
+     * File the previous process delivered last, null if there's none or it's gone
+     */
+    private File restoredOutputFile;
+    /**
+     * Pick the previous process was waiting on an activity for, taken by the first activity result
+     */
+    private PickJournal resumablePick;
+    /**
+     * Pick the previous process got the activity result for but didn't deliver, taken by the first picker
+     */
+    private PickJournal returnedPick;
+
+    private PickerSession(Context context, int id) {
+        this.id = id;
+        File filesDir = context.getFilesDir();
+        if (id == DEFAULT_SESSION) {
+            directory = new File(filesDir, CACHE_DIR_NAME);
+            dedupIndexFile = new File(filesDir, DEDUP_INDEX_NAME);
+            chooserRequestCode = PICK_IMAGE_CHOOSER_REQUEST_CODE;
+            cropRequestCode = CROP_IMAGE_ACTIVITY_REQUEST_CODE;
+            cameraPermissionRequestCode = CAMERA_CAPTURE_PERMISSIONS_REQUEST_CODE;
+            chooserWithCameraPermissionRequestCode = 100;
+            chooserPermissionRequestCode = 101;
+        } else {
+            File sessionsDir = new File(filesDir, SESSIONS_DIR_NAME);
+            directory = new File(sessionsDir, String.valueOf(id));
+            dedupIndexFile = new File(sessionsDir, id + ".dedup");
+            int base = SESSION_REQUEST_CODE_BASE + id * REQUEST_CODES_PER_SESSION;
+            chooserRequestCode = base;
+            cropRequestCode = base + 1;
+            cameraPermissionRequestCode = base + 2;
+            chooserWithCameraPermissionRequestCode = base + 3;
+            chooserPermissionRequestCode = base + 4;
+        }
+        PickerExecutors.background().execute(() -> {
+            // a few lines, read once per process
+            PickJournal journal = PickJournal.read(directory);
+            File outputFile = journal.outputPath != null ? new File(journal.outputPath) : null;
+            File restoredOutput = outputFile != null && outputFile.exists() ? outputFile : null;
+            PickerExecutors.postToMainThread(() -> onRestored(journal, restoredOutput));
+        });
+    }
+
+    private void onRestored(PickJournal journal, @Nullable File outputFile) {
+        restoredOutputFile = outputFile;
+        if (journal.isWaitingForActivity()) {
+            resumablePick = journal;
+            if (journal.stage != PickerStage.CROP && journal.cameraFile != null) {
+                // unless a capture was already started in this process
+                pendingCameraFile.compareAndSet(null, journal.cameraFile);
+            }
+        } else if (journal.isProcessing()) {
+            returnedPick = journal;
+        }
+        restored = true;
+        List<Runnable> actions = afterRestore;
+        afterRestore = null;
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    @NonNull
+    static PickerSession get(Context context, int id) {
+        if (id < 0 || id > MAX_SESSION) {
+            throw new IllegalArgumentException("Session must be 0.." + MAX_SESSION + ": " + id);
+        }
+        synchronized (sessions) {
+            PickerSession session = sessions.get(id);
+            if (session == null) {
+                session = new PickerSession(context, id);
+                sessions.put(id, session);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * Runs {@code action} on the main thread once the journal was read, right away if it already was
+     */
+    void whenRestored(Runnable action) {
+        if (restored) {
+            action.run();
+        } else {
+            afterRestore.add(action);
+        }
+    }
+
+    /**
+     * File the previous process delivered last, null if there's none or it's gone. Only after
+     * {@link #whenRestored(Runnable)}
+     */
+    @Nullable
+    File getRestoredOutputFile() {
+        return restoredOutputFile;
+    }
+
+    /**
+     * Journal of the pick to resume, null if the previous process wasn't waiting on an activity
+     * or it was already taken. Only after {@link #whenRestored(Runnable)}
+     */
+    @Nullable
+    PickJournal takeResumablePick() {
+        PickJournal pick = resumablePick;
+        resumablePick = null;
+        return pick;
+    }
+
+    /**
+     * Journal of the pick to process again, null if the previous process delivered its result
+     * or it was already taken. Only after {@link #whenRestored(Runnable)}
+     */
+    @Nullable
+    PickJournal takeReturnedPick() {
+        PickJournal pick = returnedPick;
+        returnedPick = null;
+        return pick;
+    }
+
+    boolean isPermissionRequestCode(int requestCode) {
+        return requestCode == cameraPermissionRequestCode
+                || requestCode == chooserWithCameraPermissionRequestCode
+                || requestCode == chooserPermissionRequestCode;
+    }
+}
@@ -0,0 +1,84 @@
+package com.myhexaville.smartimagepicker;
+
+/**
+ * Steps of a pick reported to {@link PickerMetricsListener}. Stages that run in the library also
+ * show up in systrace under {@code SmartImagePicker:<stage>}.
+ */
+public enum PickerStage {
+    /**
+     * Runtime permission dialog, from the request to {@link ImagePicker#handlePermission}
+     */
+    PERMISSION,
+    /**
+     * Intent chooser and the gallery or camera app picked in it
+     */
+    CHOOSER,
+    /**
+     * Camera app opened with {@link ImagePicker#openCamera()}
+     */
+    CAMERA,
+    /**
+     * {@link ImagePicker#handleActivityResult} itself
+     */
+    ACTIVITY_RESULT,
+    /**
+     * Reading the picked uris out of the returned intent
+     */
+    PICKED_RESULT,
+    /**
+     * Making the preview for {@link OnImagePreviewListener}, bytes are the bitmap allocation size
+     */
+    PREVIEW,
+    /**
+     * Copying a content:// image into the library's directory, bytes are the copied size
+     */
+    IMPORT,
+    /**
+     * Crop activity, from its start until it returns, so mostly the time the user takes
+     */
+    CROP,
+    /**
+     * Decoding the rectangle picked in the crop activity, or the centered one of auto crop, and
+     * writing it. Bytes are the written size
+     */
+    CROP_DECODE,
+    /**
+     * The fused {@link Transform} chain, crop included, from decode to encode. Bytes are the encoded size
+     */
+    TRANSFORM,
+    /**
+     * Re-encoding, bytes are the encoded file size
+     */
+    ENCODE,
+    /**
+     * Removing metadata from a JPEG that wasn't re-encoded, bytes are the stripped file size
+     */
+    STRIP,
+    /**
+     * Streaming an already written file to the {@link OutputSink}, bytes are the streamed size.
+     * Encoded output is streamed as it's compressed and counts as {@link #ENCODE}
+     */
+    STREAM,
+    /**
+     * Decoding once and encoding every rendition from it, bytes are the encoded sizes together
+     */
+    RENDITIONS,
+    /**
+     * Decoding a tiny copy of the output and encoding the placeholder, bytes are the placeholder's length
+     */
+    PLACEHOLDER,
+    /**
+     * Decoding the bitmap for {@link OnImageDecodedListener}, bytes are the bitmap allocation size
+     */
+    DECODE,
+    /**
+     * Committing or deleting a file in the library's directory
+     */
+    CLEANUP,
+    /**
+     * Calling the picker's listeners with the result
+     */
+    DELIVERY;
+
+    final String traceName = "SmartImagePicker:" + name();
+}
@@ -0,0 +1,105 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Makes a preview the cheapest way available: the EXIF thumbnail, which only needs the JPEG
+ * header, then the media provider's thumbnail, then a subsampled decode of the image.
+ */
+final class PreviewLoader {
+    private static final String MEDIA_DOCUMENTS_AUTHORITY = "com.android.providers.media.documents";
+
+    private PreviewLoader() {
+    }
+
+    /**
+     * Returns null if the image can't be read at all
+     */
+    @WorkerThread
+    @Nullable
+    static ImagePreview load(Context context, Uri imageUri, int maxSize, long startNanos) {
+        ContentResolver resolver = context.getContentResolver();
+        int orientation = ExifParser.ORIENTATION_NORMAL;
+        byte[] thumbnail = null;
+        try (InputStream in = resolver.openInputStream(imageUri)) {
+            byte[] segment = in != null ? ExifParser.readExifSegment(in) : null;
+            if (segment != null) {
+                orientation = ExifParser.parseOrientation(segment);
+                thumbnail = ExifParser.parseThumbnail(segment);
+            }
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            return null;
+        }
+
+        if (thumbnail != null) {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(thumbnail, 0, thumbnail.length);
+            if (bitmap != null) {
+                return newPreview(bitmap, orientation, maxSize, ImagePreview.Source.EXIF_THUMBNAIL, startNanos);
+            }
+        }
+
+        long mediaId = mediaStoreId(context, imageUri);
+        if (mediaId >= 0) {
+            try {
+                Bitmap bitmap = MediaStore.Images.Thumbnails.getThumbnail(
+                        resolver, mediaId, MediaStore.Images.Thumbnails.MINI_KIND, null);
+                if (bitmap != null) {
+                    return newPreview(bitmap, orientation, maxSize, ImagePreview.Source.MEDIA_STORE_THUMBNAIL, startNanos);
+                }
+            } catch (RuntimeException ignored) {
+                // fall back to decoding the image
+            }
+        }
+
+        try {
+            Bitmap bitmap = BitmapDecoder.decode(context, imageUri, maxSize, maxSize);
+            return new ImagePreview(bitmap, ImagePreview.Source.SUBSAMPLED, System.nanoTime() - startNanos);
+        } catch (IOException | RuntimeException | OutOfMemoryError e) {
+            return null;
+        }
+    }
+
+    private static ImagePreview newPreview(Bitmap bitmap, int orientation, int maxSize,
+                                           ImagePreview.Source source, long startNanos) {
+        Bitmap oriented = BitmapDecoder.transform(bitmap, maxSize, maxSize, orientation, null);
+        return new ImagePreview(oriented, source, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Id of the image in the media provider, -1 if the uri doesn't come from it
+     */
+    static long mediaStoreId(Context context, Uri imageUri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(imageUri.getScheme())) {
+            return -1;
+        }
+        try {
+            if (MediaStore.AUTHORITY.equals(imageUri.getAuthority())) {
+                return ContentUris.parseId(imageUri);
+            }
+            if (MEDIA_DOCUMENTS_AUTHORITY.equals(imageUri.getAuthority())
+                    && DocumentsContract.isDocumentUri(context, imageUri)) {
+                // document ids look like "image:42"
+                String documentId = DocumentsContract.getDocumentId(imageUri);
+                int separator = documentId.indexOf(':');
+                if (separator > 0 && documentId.startsWith("image")) {
+                    return Long.parseLong(documentId.substring(separator + 1));
+                }
+            }
+        } catch (RuntimeException ignored) {
+            // not a media id
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,69 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.IOException;
+
+/**
+ * Finds the highest encoder quality whose output fits a byte budget with a binary search,
+ * so a 1..100 range takes at most 8 encodes. Free of Android types so it can run on a plain JVM.
+ */
+final class QualitySearch {
+
+    interface Encoder {
+        /**
+         * Encodes at {@code quality} and returns the output size in bytes
+         */
+        long encodedSize(int quality) throws IOException;
+    }
+
+    static final class Result {
+        final int quality;
+        final long bytes;
+        final boolean fits;
+        final int attempts;
+
+        Result(int quality, long bytes, boolean fits, int attempts) {
+            this.quality = quality;
+            this.bytes = bytes;
+            this.fits = fits;
+            this.attempts = attempts;
+        }
+    }
+
+    private QualitySearch() {
+    }
+
+    /**
+     * Returns the highest quality in {@code minQuality..maxQuality} that fits {@code maxBytes},
+     * or {@code minQuality} with {@link Result#fits} false if nothing does. Tries
+     * {@code maxQuality} first because small images usually fit right away.
+     */
+    static Result search(int minQuality, int maxQuality, long maxBytes, Encoder encoder) throws IOException {
+        int attempts = 1;
+        long bytes = encoder.encodedSize(maxQuality);
+        if (bytes <= maxBytes || minQuality >= maxQuality) {
+            return new Result(maxQuality, bytes, bytes <= maxBytes, attempts);
+        }
+        int low = minQuality;
+        int high = maxQuality - 1;
+        int best = -1;
+        long bestBytes = 0;
+        long lowestBytes = bytes;
+        while (low <= high) {
+            int quality = (low + high) >>> 1;
+            bytes = encoder.encodedSize(quality);
+            attempts++;
+            if (bytes <= maxBytes) {
+                best = quality;
+                bestBytes = bytes;
+                low = quality + 1;
+            } else {
+                lowestBytes = bytes;
+                high = quality - 1;
+            }
+        }
+        if (best == -1) {
+            return new Result(minQuality, lowestBytes, false, attempts);
+        }
+        return new Result(best, bestBytes, true, attempts);
+    }
+}
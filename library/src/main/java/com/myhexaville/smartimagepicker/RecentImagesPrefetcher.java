@@ -0,0 +1,209 @@
+package com.myhexaville.smartimagepicker;
+
+import android.annotation.SuppressLint;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.provider.MediaStore;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Gets the newest images of the media provider ready before they're picked, since that's usually
+ * a photo taken a minute ago. Watches the provider for new images and, on the lowest priority
+ * prefetch thread, probes each one and loads its preview, and while the device is charging runs the picker's import,
+ * crop and compression for it so the pick finds the output in the disk cache. Does nothing under
+ * memory pressure, in power save mode or in doze.
+ */
+final class RecentImagesPrefetcher {
+    private static final String TAG = "RecentImagesPrefetcher";
+    /**
+     * A camera inserts the row and updates it once the file is written, wait for changes to settle
+     */
+    private static final long SETTLE_DELAY_MS = 2000;
+
+    interface Host {
+        /**
+         * 0 when the picker shows no previews
+         */
+        int getPreviewMaxSize();
+
+        /**
+         * Runs the picker's stages for {@code imageUri} into its caches
+         */
+        @WorkerThread
+        void prefetchOutput(Uri imageUri) throws IOException;
+    }
+
+    private final Context context;
+    private final int count;
+    private final Host host;
+    private final MemoryPressure memoryPressure;
+    private final LruCache<Long, ImagePreview> previews;
+    /**
+     * Ids whose output is prefetched, only touched on the prefetch thread
+     */
+    private final Set<Long> prefetched = new LinkedHashSet<>();
+    private final Runnable prefetch = () -> PickerExecutors.prefetch().execute(this::prefetch);
+    private final OnMemoryLevelChangedListener levelListener = level -> {
+        if (!level.allowsPrefetch()) {
+            trimPreviews(level);
+        }
+    };
+    private final ContentObserver observer = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            schedule();
+        }
+    };
+    private volatile boolean started;
+
+    RecentImagesPrefetcher(Context context, int count, MemoryPressure memoryPressure, Host host) {
+        this.context = context.getApplicationContext();
+        this.count = count;
+        this.memoryPressure = memoryPressure;
+        this.host = host;
+        this.previews = new LruCache<>(count);
+    }
+
+    /**
+     * Prefetches the newest images now and whenever new ones are added
+     */
+    @MainThread
+    void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        context.getContentResolver().registerContentObserver(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+        memoryPressure.addOnLevelChangedListener(levelListener);
+        schedule();
+    }
+
+    @MainThread
+    void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        context.getContentResolver().unregisterContentObserver(observer);
+        memoryPressure.removeOnLevelChangedListener(levelListener);
+        PickerExecutors.removeFromMainThread(prefetch);
+        previews.evictAll();
+    }
+
+    /**
+     * Preview prefetched for a media provider or media documents uri, null if there's none
+     */
+    @Nullable
+    ImagePreview getPreview(Uri imageUri) {
+        long id = PreviewLoader.mediaStoreId(context, imageUri);
+        return id >= 0 ? previews.get(id) : null;
+    }
+
+    private void schedule() {
+        PickerExecutors.removeFromMainThread(prefetch);
+        PickerExecutors.postToMainThreadDelayed(prefetch, SETTLE_DELAY_MS);
+    }
+
+    private void trimPreviews(MemoryLevel level) {
+        if (level == MemoryLevel.CRITICAL) {
+            previews.evictAll();
+        } else {
+            previews.trimToSize(count / 2);
+        }
+    }
+
+    /**
+     * Newest first, so the image most likely to be picked is ready first. Conditions are checked
+     * again before every image, a prefetch doesn't keep going after the user unplugs the device
+     */
+    @WorkerThread
+    private void prefetch() {
+        if (!started || !isAllowed()) {
+            return;
+        }
+        MediaStorePager.Page page;
+        try {
+            page = new MediaStorePager(context.getContentResolver(), count).loadNextPage();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "prefetch: couldn't query images", e);
+            return;
+        }
+        for (int i = 0; i < page.count && started && isAllowed(); i++) {
+            long id = page.ids[i];
+            Uri imageUri = ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
+            try {
+                // the row can be there before the file is written, the next change retries it
+                ImageProbe.probe(context, imageUri);
+            } catch (IOException | RuntimeException e) {
+                continue;
+            }
+            int previewMaxSize = host.getPreviewMaxSize();
+            if (previewMaxSize > 0 && previews.get(id) == null) {
+                ImagePreview preview = PreviewLoader.load(context, imageUri, previewMaxSize, System.nanoTime());
+                if (preview != null) {
+                    previews.put(id, preview);
+                }
+            }
+            if (prefetched.contains(id) || !isCharging()) {
+                continue;
+            }
+            try {
+                host.prefetchOutput(imageUri);
+                prefetched.add(id);
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                Log.e(TAG, "prefetch: couldn't prefetch " + imageUri, e);
+            }
+        }
+        trimPrefetched();
+    }
+
+    private void trimPrefetched() {
+        Iterator<Long> iterator = prefetched.iterator();
+        while (prefetched.size() > count * 2 && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private boolean isAllowed() {
+        if (!memoryPressure.getLevel().allowsPrefetch()) {
+            return false;
+        }
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null) {
+            return true;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && powerManager.isPowerSaveMode()) {
+            return false;
+        }
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.M || !powerManager.isDeviceIdleMode();
+    }
+
+    /**
+     * Reads the sticky battery broadcast, no receiver is registered
+     */
+    private boolean isCharging() {
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+}
@@ -0,0 +1,197 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Crops with {@link BitmapRegionDecoder}, so only the selected rectangle is decoded, subsampled
+ * to the output size. Rectangles are in the coordinates of the stored image, before EXIF
+ * orientation, which is how the crop activity reports them. Don't call it from the main thread.
+ */
+final class RegionCropper {
+
+    private RegionCropper() {
+    }
+
+    /**
+     * Decodes {@code region} of the stored image, oriented and scaled to fit {@code maxWidth x maxHeight}
+     */
+    @NonNull
+    static Bitmap decode(Context context, Uri imageUri, Rect region, int orientation,
+                         int maxWidth, int maxHeight, @Nullable BitmapPool pool) throws IOException {
+        BitmapRegionDecoder decoder = openDecoder(context, imageUri);
+        try {
+            return decode(decoder, imageUri, region, orientation, maxWidth, maxHeight, pool);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * Decodes the largest centered {@code aspectX:aspectY} rectangle of the oriented image,
+     * scaled to fit {@code maxWidth x maxHeight}
+     */
+    @NonNull
+    static Bitmap decodeCenterCrop(Context context, Uri imageUri, int orientation, int aspectX, int aspectY,
+                                   int maxWidth, int maxHeight, @Nullable BitmapPool pool) throws IOException {
+        BitmapRegionDecoder decoder = openDecoder(context, imageUri);
+        try {
+            Rect region = centerCrop(decoder.getWidth(), decoder.getHeight(), orientation, aspectX, aspectY);
+            return decode(decoder, imageUri, region, orientation, maxWidth, maxHeight, pool);
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    @NonNull
+    private static Bitmap decode(BitmapRegionDecoder decoder, Uri imageUri, Rect region, int orientation,
+                                 int maxWidth, int maxHeight, @Nullable BitmapPool pool) throws IOException {
+        Rect bounded = new Rect(region);
+        if (!bounded.intersect(0, 0, decoder.getWidth(), decoder.getHeight()) || bounded.isEmpty()) {
+            throw new IllegalArgumentException("Crop " + region + " is outside of "
+                    + decoder.getWidth() + "x" + decoder.getHeight());
+        }
+        boolean swapped = ExifParser.isSwapped(orientation);
+        int sampleSize = SampleSize.calculate(
+                swapped ? bounded.height() : bounded.width(),
+                swapped ? bounded.width() : bounded.height(),
+                maxWidth, maxHeight);
+        Bitmap sampled = decodeRegion(decoder, imageUri, bounded, sampleSize, pool);
+        return BitmapDecoder.transform(sampled, maxWidth, maxHeight, orientation, pool);
+    }
+
+    /**
+     * Decodes {@code region} subsampled as is, into a pooled bitmap when there's one that fits
+     */
+    @NonNull
+    static Bitmap decodeRegion(BitmapRegionDecoder decoder, Uri imageUri, Rect region, int sampleSize,
+                               @Nullable BitmapPool pool) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        if (pool != null) {
+            options.inMutable = true;
+            options.inBitmap = pool.get(
+                    ceilDiv(region.width(), options.inSampleSize),
+                    ceilDiv(region.height(), options.inSampleSize),
+                    Bitmap.Config.ARGB_8888);
+        }
+        Bitmap sampled;
+        try {
+            sampled = decoder.decodeRegion(region, options);
+        } catch (IllegalArgumentException e) {
+            if (pool == null || options.inBitmap == null) {
+                throw e;
+            }
+            // the pooled bitmap can't be reused for this region
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            sampled = decoder.decodeRegion(region, options);
+        }
+        if (sampled == null) {
+            throw new IOException("Couldn't decode " + region + " of " + imageUri);
+        }
+        return sampled;
+    }
+
+    @NonNull
+    static BitmapRegionDecoder openDecoder(Context context, Uri imageUri) throws IOException {
+        BitmapRegionDecoder decoder;
+        try (InputStream in = openStream(context.getContentResolver(), imageUri)) {
+            decoder = BitmapRegionDecoder.newInstance(in, false);
+        }
+        if (decoder == null) {
+            throw new IOException("Couldn't open region decoder for " + imageUri);
+        }
+        return decoder;
+    }
+
+    /**
+     * Largest centered rectangle with the {@code aspectX:aspectY} ratio once the image is
+     * oriented, in stored image coordinates
+     */
+    @NonNull
+    static Rect centerCrop(int width, int height, int orientation, int aspectX, int aspectY) {
+        if (aspectX <= 0 || aspectY <= 0) {
+            throw new IllegalArgumentException("Aspect ratio must be positive: " + aspectX + ":" + aspectY);
+        }
+        boolean swapped = ExifParser.isSwapped(orientation);
+        int orientedWidth = swapped ? height : width;
+        int orientedHeight = swapped ? width : height;
+        int cropWidth = orientedWidth;
+        int cropHeight = orientedHeight;
+        if ((long) orientedWidth * aspectY > (long) orientedHeight * aspectX) {
+            cropWidth = (int) ((long) orientedHeight * aspectX / aspectY);
+        } else {
+            cropHeight = (int) ((long) orientedWidth * aspectY / aspectX);
+        }
+        int left = (orientedWidth - cropWidth) / 2;
+        int top = (orientedHeight - cropHeight) / 2;
+        return toStored(new Rect(left, top, left + cropWidth, top + cropHeight), width, height, orientation);
+    }
+
+    /**
+     * Maps a rectangle of the oriented image back to the stored {@code width x height} image
+     */
+    @NonNull
+    static Rect toStored(Rect oriented, int width, int height, int orientation) {
+        int l = oriented.left, t = oriented.top, r = oriented.right, b = oriented.bottom;
+        switch (orientation) {
+            case ExifParser.ORIENTATION_FLIP_HORIZONTAL:
+                return new Rect(width - r, t, width - l, b);
+            case ExifParser.ORIENTATION_ROTATE_180:
+                return new Rect(width - r, height - b, width - l, height - t);
+            case ExifParser.ORIENTATION_FLIP_VERTICAL:
+                return new Rect(l, height - b, r, height - t);
+            case ExifParser.ORIENTATION_TRANSPOSE:
+                return new Rect(t, l, b, r);
+            case ExifParser.ORIENTATION_ROTATE_90:
+                return new Rect(t, height - r, b, height - l);
+            case ExifParser.ORIENTATION_TRANSVERSE:
+                return new Rect(width - b, height - r, width - t, height - l);
+            case ExifParser.ORIENTATION_ROTATE_270:
+                return new Rect(width - b, l, width - t, r);
+            default:
+                return new Rect(oriented);
+        }
+    }
+
+    /**
+     * Orientation for a clockwise rotation in degrees, as reported by the crop activity
+     */
+    static int orientationForDegrees(int degrees) {
+        switch (((degrees % 360) + 360) % 360) {
+            case 90:
+                return ExifParser.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifParser.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifParser.ORIENTATION_ROTATE_270;
+            default:
+                return ExifParser.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static int ceilDiv(int size, int divisor) {
+        return (size + divisor - 1) / divisor;
+    }
+
+    @NonNull
+    private static InputStream openStream(ContentResolver resolver, Uri imageUri) throws IOException {
+        InputStream in = resolver.openInputStream(imageUri);
+        if (in == null) {
+            throw new FileNotFoundException("Couldn't open " + imageUri);
+        }
+        return in;
+    }
+}
@@ -0,0 +1,64 @@
+package com.myhexaville.smartimagepicker;
+
+import android.support.annotation.NonNull;
+
+/**
+ * One output size of {@link ImagePicker#setWithRenditions(Rendition...)}, e.g. the thumbnail,
+ * the feed size or the archival size of a picked image.
+ */
+public final class Rendition {
+    private final String name;
+    private final int maxWidth, maxHeight;
+    private final OutputFormat format;
+    private final int quality;
+
+    /**
+     * {@code name} finds the file in {@link PickResult#getRendition(String)}. Sizes bigger than the
+     * image keep its size, so {@code Integer.MAX_VALUE} is full size, at most 4096 pixels
+     */
+    public Rendition(@NonNull String name, int maxWidth, int maxHeight, @NonNull OutputFormat format, int quality) {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxWidth + "x" + maxHeight);
+        }
+        if (quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be 0..100: " + quality);
+        }
+        this.name = name;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.format = format;
+        this.quality = quality;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    @NonNull
+    public OutputFormat getFormat() {
+        return format;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    @Override
+    public String toString() {
+        return "Rendition{" +
+                "name=" + name +
+                ", maxSize=" + maxWidth + "x" + maxHeight +
+                ", format=" + format +
+                ", quality=" + quality +
+                '}';
+    }
+}
@@ -0,0 +1,40 @@
+package com.myhexaville.smartimagepicker;
+
+/**
+ * Subsampling math for decodes that must fit into a max width/height box.
+ * Free of Android types so it can run on a plain JVM.
+ */
+final class SampleSize {
+
+    private SampleSize() {
+    }
+
+    /**
+     * Scale factor that fits {@code width x height} into {@code maxWidth x maxHeight}
+     * keeping the aspect ratio, never above 1.
+     */
+    static float fitScale(int width, int height, int maxWidth, int maxHeight) {
+        if (width <= 0 || height <= 0) {
+            return 1f;
+        }
+        float scale = Math.min((float) maxWidth / width, (float) maxHeight / height);
+        return Math.min(scale, 1f);
+    }
+
+    /**
+     * Largest power of two sample size that still leaves the decoded image at least as big as the
+     * fitted output, so the remaining exact scale only ever shrinks.
+     */
+    static int calculate(int width, int height, int maxWidth, int maxHeight) {
+        float scale = fitScale(width, height, maxWidth, maxHeight);
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    static int scaled(int size, float scale) {
+        return Math.max(1, Math.round(size * scale));
+    }
+}
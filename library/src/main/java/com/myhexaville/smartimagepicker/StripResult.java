@@ -0,0 +1,60 @@
+package com.myhexaville.smartimagepicker;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the metadata stripping stage removed from a JPEG and how long it took
+ */
+public class StripResult {
+    private final File file;
+    private final long bytes;
+    private final long removedBytes;
+    private final int removedSegments;
+    private final long durationNanos;
+
+    StripResult(File file, long bytes, long removedBytes, int removedSegments, long durationNanos) {
+        this.file = file;
+        this.bytes = bytes;
+        this.removedBytes = removedBytes;
+        this.removedSegments = removedSegments;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Same pixels as the picked image, bit for bit, without its metadata
+     */
+    public File getFile() {
+        return file;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getRemovedBytes() {
+        return removedBytes;
+    }
+
+    /**
+     * Segments dropped, an EXIF segment rewritten to hold only the orientation counts too
+     */
+    public int getRemovedSegments() {
+        return removedSegments;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "StripResult{" +
+                "file=" + file +
+                ", bytes=" + bytes +
+                ", removedBytes=" + removedBytes +
+                ", removedSegments=" + removedSegments +
+                ", durationMs=" + TimeUnit.NANOSECONDS.toMillis(durationNanos) +
+                '}';
+    }
+}
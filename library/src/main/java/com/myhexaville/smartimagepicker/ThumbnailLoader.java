@@ -0,0 +1,139 @@
+package com.myhexaville.smartimagepicker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.provider.MediaStore;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.IOException;
+
+/**
+ * Gallery thumbnails from the media provider's own thumbnail store, decoded as RGB_565 and kept in
+ * an LRU sized in bytes. Loads run on the thumbnail threads and are cancelled when their cell is
+ * rebound or recycled, so a fling doesn't queue decodes nobody will see.
+ */
+final class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+    private static final int MAX_CACHE_BYTES = 32 * 1024 * 1024;
+    /**
+     * MINI_KIND thumbnails are at most 512x384
+     */
+    private static final int MINI_KIND_SHORT_SIDE = 384;
+
+    interface Callback {
+        void onThumbnailLoaded(Bitmap bitmap);
+    }
+
+    final class Request implements Runnable {
+        private final long id;
+        private final int orientation;
+        private final Callback callback;
+        private volatile boolean cancelled;
+        private volatile boolean running;
+
+        Request(long id, int orientation, Callback callback) {
+            this.id = id;
+            this.orientation = orientation;
+            this.callback = callback;
+        }
+
+        /**
+         * The callback won't be called after this. A decode that already started is asked to stop
+         */
+        @MainThread
+        void cancel() {
+            cancelled = true;
+            if (running) {
+                MediaStore.Images.Thumbnails.cancelThumbnailRequest(resolver, id);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            running = true;
+            Bitmap bitmap = null;
+            try {
+                bitmap = decode(id, orientation);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "run: couldn't load thumbnail " + id, e);
+            } finally {
+                running = false;
+            }
+            if (bitmap == null) {
+                return;
+            }
+            cache.put(id, bitmap);
+            Bitmap loaded = bitmap;
+            PickerExecutors.postToMainThread(() -> {
+                if (!cancelled) {
+                    callback.onThumbnailLoaded(loaded);
+                }
+            });
+        }
+    }
+
+    private final Context context;
+    private final ContentResolver resolver;
+    private final int cellSize;
+    private final LruCache<Long, Bitmap> cache;
+
+    ThumbnailLoader(Context context, int cellSize) {
+        this.context = context.getApplicationContext();
+        this.resolver = context.getContentResolver();
+        this.cellSize = cellSize;
+        int maxCacheBytes = (int) Math.min(Runtime.getRuntime().maxMemory() / 16, MAX_CACHE_BYTES);
+        this.cache = new LruCache<Long, Bitmap>(maxCacheBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return BitmapPool.allocationSize(value);
+            }
+        };
+    }
+
+    @Nullable
+    Bitmap getCached(long id) {
+        return cache.get(id);
+    }
+
+    @MainThread
+    Request load(long id, int orientation, Callback callback) {
+        Request request = new Request(id, orientation, callback);
+        PickerExecutors.thumbnails().execute(request);
+        return request;
+    }
+
+    void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * Falls back to decoding the image itself for images the provider has no thumbnail for, into
+     * twice the cell so the short side still fills it once centre cropped
+     */
+    @Nullable
+    private Bitmap decode(long id, int orientation) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inSampleSize = 1;
+        while (MINI_KIND_SHORT_SIDE / (options.inSampleSize * 2) >= cellSize) {
+            options.inSampleSize *= 2;
+        }
+        Bitmap thumbnail = MediaStore.Images.Thumbnails.getThumbnail(
+                resolver, id, MediaStore.Images.Thumbnails.MINI_KIND, options);
+        if (thumbnail != null) {
+            return BitmapDecoder.transform(thumbnail, Integer.MAX_VALUE, Integer.MAX_VALUE, orientation, null);
+        }
+        return BitmapDecoder.decode(context,
+                ContentUris.withAppendedId(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id),
+                cellSize * 2, cellSize * 2, null, Bitmap.Config.RGB_565);
+    }
+}
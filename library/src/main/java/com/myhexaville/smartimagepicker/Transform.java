@@ -0,0 +1,149 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * One step of {@link ImagePicker#setWithTransforms(Transform...)}. Steps run in the order they're
+ * given, but not one after another: crops, rotations and resizes are folded into one region decode
+ * and one draw, watermarks are drawn in the same pass and the image is encoded once.
+ */
+public final class Transform {
+    enum Type {
+        RESIZE, ORIENT, CENTER_CROP, STRIP_METADATA, WATERMARK
+    }
+
+    final Type type;
+    final int first, second;
+    final Bitmap watermark;
+    private volatile String watermarkVariant;
+
+    private Transform(Type type, int first, int second, Bitmap watermark) {
+        this.type = type;
+        this.first = first;
+        this.second = second;
+        this.watermark = watermark;
+    }
+
+    /**
+     * Scales the image down to fit, it's never scaled up
+     */
+    @NonNull
+    public static Transform resize(int maxWidth, int maxHeight) {
+        if (maxWidth <= 0 || maxHeight <= 0) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxWidth + "x" + maxHeight);
+        }
+        return new Transform(Type.RESIZE, maxWidth, maxHeight, null);
+    }
+
+    /**
+     * Clockwise, in steps of 90 degrees
+     */
+    @NonNull
+    public static Transform rotate(int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90: " + degrees);
+        }
+        return new Transform(Type.ORIENT, RegionCropper.orientationForDegrees(degrees), 0, null);
+    }
+
+    @NonNull
+    public static Transform flipHorizontal() {
+        return new Transform(Type.ORIENT, ExifParser.ORIENTATION_FLIP_HORIZONTAL, 0, null);
+    }
+
+    @NonNull
+    public static Transform flipVertical() {
+        return new Transform(Type.ORIENT, ExifParser.ORIENTATION_FLIP_VERTICAL, 0, null);
+    }
+
+    /**
+     * Largest centered {@code aspectX:aspectY} rectangle of the image as it is at this step
+     */
+    @NonNull
+    public static Transform centerCrop(int aspectX, int aspectY) {
+        if (aspectX <= 0 || aspectY <= 0) {
+            throw new IllegalArgumentException("Aspect ratio must be positive: " + aspectX + ":" + aspectY);
+        }
+        return new Transform(Type.CENTER_CROP, aspectX, aspectY, null);
+    }
+
+    /**
+     * Leaves EXIF, XMP and other metadata out of the output. The orientation is applied to the pixels.
+     * To only strip metadata use {@link ImagePicker#setWithMetadataStripping}, it doesn't re-encode
+     */
+    @NonNull
+    public static Transform stripMetadata() {
+        return new Transform(Type.STRIP_METADATA, 0, 0, null);
+    }
+
+    /**
+     * Draws {@code watermark} in the bottom right corner of the final image, at most a quarter of
+     * its width, wherever the step is in the chain. The bitmap is only read and must stay valid
+     * and unchanged, outputs are reused for watermarks with the same pixels
+     */
+    @NonNull
+    public static Transform watermark(@NonNull Bitmap watermark) {
+        return new Transform(Type.WATERMARK, 0, 0, watermark);
+    }
+
+    /**
+     * Part of the dedup variant, letters, digits and dots only. Watermarks are told apart by their
+     * size and pixels, the placement is the same for all of them. Called on a worker thread
+     */
+    String variant() {
+        switch (type) {
+            case RESIZE:
+                return "s" + first + "." + second;
+            case ORIENT:
+                return "o" + first;
+            case CENTER_CROP:
+                return "c" + first + "." + second;
+            case STRIP_METADATA:
+                return "x";
+            default:
+                return watermarkVariant();
+        }
+    }
+
+    /**
+     * Hashes the pixels a row at a time, once per transform
+     */
+    private String watermarkVariant() {
+        String variant = watermarkVariant;
+        if (variant == null) {
+            int width = watermark.getWidth();
+            int height = watermark.getHeight();
+            MessageDigest digest = DedupIndex.newDigest();
+            int[] row = new int[width];
+            ByteBuffer bytes = ByteBuffer.allocate(width * 4);
+            for (int y = 0; y < height; y++) {
+                watermark.getPixels(row, 0, width, 0, y, width, 1);
+                bytes.asIntBuffer().put(row);
+                digest.update(bytes.array());
+            }
+            variant = "w" + width + "." + height + "." + DedupIndex.toHex(digest.digest()).substring(0, 16);
+            watermarkVariant = variant;
+        }
+        return variant;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case RESIZE:
+                return "resize " + first + "x" + second;
+            case ORIENT:
+                return "orient " + first;
+            case CENTER_CROP:
+                return "crop " + first + ":" + second;
+            case STRIP_METADATA:
+                return "strip metadata";
+            default:
+                return "watermark " + watermark.getWidth() + "x" + watermark.getHeight();
+        }
+    }
+}
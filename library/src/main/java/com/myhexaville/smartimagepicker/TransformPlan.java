@@ -0,0 +1,105 @@
+package com.myhexaville.smartimagepicker;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What a chain of {@link Transform}s comes down to: one region of the stored image, decoded with
+ * one sample size, drawn with one orientation and scale, watermarks drawn on top, encoded once.
+ * Crops are tracked as a rectangle of the stored image, rotations and flips as one composed EXIF
+ * orientation and resizes as one scale, so the order of the steps is kept without running them.
+ */
+final class TransformPlan {
+    /**
+     * Stored image coordinates, before orientation
+     */
+    final Rect region;
+    final int orientation;
+    final int sampleSize;
+    final int outputWidth, outputHeight;
+    final List<Bitmap> watermarks;
+    final boolean stripMetadata;
+
+    private TransformPlan(Rect region, int orientation, int sampleSize, int outputWidth, int outputHeight,
+                          List<Bitmap> watermarks, boolean stripMetadata) {
+        this.region = region;
+        this.orientation = orientation;
+        this.sampleSize = sampleSize;
+        this.outputWidth = outputWidth;
+        this.outputHeight = outputHeight;
+        this.watermarks = watermarks;
+        this.stripMetadata = stripMetadata;
+    }
+
+    /**
+     * @param crop        rectangle of the crop activity, or null for the whole image
+     * @param orientation EXIF orientation of the stored image, with the crop activity's rotation
+     * @param maxWidth    the output always fits this box, the compression size or the crop size limit
+     */
+    @NonNull
+    static TransformPlan plan(int width, int height, @Nullable Rect crop, int orientation,
+                              List<Transform> transforms, int maxWidth, int maxHeight) {
+        Rect region = new Rect(0, 0, width, height);
+        if (crop != null && !region.intersect(crop.left, crop.top, crop.right, crop.bottom)) {
+            throw new IllegalArgumentException("Crop " + crop + " is outside of " + width + "x" + height);
+        }
+        float scale = 1f;
+        List<Bitmap> watermarks = new ArrayList<>();
+        boolean stripMetadata = false;
+        for (Transform transform : transforms) {
+            switch (transform.type) {
+                case ORIENT:
+                    orientation = ExifParser.compose(orientation, transform.first);
+                    break;
+                case CENTER_CROP:
+                    Rect centered = RegionCropper.centerCrop(region.width(), region.height(), orientation,
+                            transform.first, transform.second);
+                    centered.offset(region.left, region.top);
+                    region = centered;
+                    break;
+                case RESIZE:
+                    scale *= SampleSize.fitScale(scaledWidth(region, orientation, scale),
+                            scaledHeight(region, orientation, scale), transform.first, transform.second);
+                    break;
+                case STRIP_METADATA:
+                    stripMetadata = true;
+                    break;
+                case WATERMARK:
+                    watermarks.add(transform.watermark);
+                    break;
+            }
+        }
+        scale *= SampleSize.fitScale(scaledWidth(region, orientation, scale),
+                scaledHeight(region, orientation, scale), maxWidth, maxHeight);
+        int outputWidth = scaledWidth(region, orientation, scale);
+        int outputHeight = scaledHeight(region, orientation, scale);
+        boolean swapped = ExifParser.isSwapped(orientation);
+        int sampleSize = SampleSize.calculate(
+                swapped ? region.height() : region.width(),
+                swapped ? region.width() : region.height(),
+                outputWidth, outputHeight);
+        return new TransformPlan(region, orientation, sampleSize, outputWidth, outputHeight, watermarks, stripMetadata);
+    }
+
+    private static int scaledWidth(Rect region, int orientation, float scale) {
+        return SampleSize.scaled(ExifParser.isSwapped(orientation) ? region.height() : region.width(), scale);
+    }
+
+    private static int scaledHeight(Rect region, int orientation, float scale) {
+        return SampleSize.scaled(ExifParser.isSwapped(orientation) ? region.width() : region.height(), scale);
+    }
+
+    @Override
+    public String toString() {
+        return "decode " + region.left + "," + region.top + " " + region.width() + "x" + region.height()
+                + " at 1/" + sampleSize
+                + ", draw orientation " + orientation + " into " + outputWidth + "x" + outputHeight
+                + (watermarks.isEmpty() ? "" : " with " + watermarks.size() + " watermarks")
+                + ", encode once" + (stripMetadata ? " without metadata" : "");
+    }
+}
@@ -0,0 +1,59 @@
+package com.myhexaville.smartimagepicker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the {@link Transform} chain of {@link ImagePicker#setWithTransforms} was run and how long each
+ * pass took. The encoded file is in {@link PickResult#getEncodeResult()}.
+ */
+public class TransformResult {
+    private final String plan;
+    private final long decodeNanos;
+    private final long drawNanos;
+    private final long encodeNanos;
+
+    TransformResult(String plan, long decodeNanos, long drawNanos, long encodeNanos) {
+        this.plan = plan;
+        this.decodeNanos = decodeNanos;
+        this.drawNanos = drawNanos;
+        this.encodeNanos = encodeNanos;
+    }
+
+    /**
+     * The fused passes the steps were planned into, for logs
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    /**
+     * Region decode, covers every crop and the subsampled part of every resize
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * The one draw, covers rotations, flips, the rest of every resize and watermarks
+     */
+    public long getDrawNanos() {
+        return drawNanos;
+    }
+
+    /**
+     * Encode, covers compression and metadata stripping
+     */
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TransformResult{" +
+                "plan=" + plan +
+                ", decodeMs=" + TimeUnit.NANOSECONDS.toMillis(decodeNanos) +
+                ", drawMs=" + TimeUnit.NANOSECONDS.toMillis(drawNanos) +
+                ", encodeMs=" + TimeUnit.NANOSECONDS.toMillis(encodeNanos) +
+                '}';
+    }
+}
@@ -0,0 +1,165 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BlurHashEncoderTest {
+    private static final String BASE83 =
+            "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz#$%*+,-.:;=?@[]^_{|}~";
+
+    @Test
+    public void singleComponentIsTheAverageColor() {
+        BlurHashEncoder encoder = BlurHashEncoder.get();
+        fill(encoder, 32, 24, 0xFF3366CC);
+        assertEquals("00" + encode83(0x3366CC, 4), encoder.encode(32, 24, 1, 1));
+    }
+
+    @Test
+    public void headerDescribesComponents() {
+        BlurHashEncoder encoder = BlurHashEncoder.get();
+        fill(encoder, 32, 24, 0xFF3366CC);
+        String hash = encoder.encode(32, 24, 4, 3);
+        assertEquals(1 + 1 + 4 + 2 * (4 * 3 - 1), hash.length());
+        assertEquals(BASE83.charAt(3 + 2 * 9), hash.charAt(0));
+        assertEquals(encode83(0x3366CC, 4), hash.substring(2, 6));
+    }
+
+    @Test
+    public void matchesReferenceEncoder() {
+        Random random = new Random(24);
+        BlurHashEncoder encoder = BlurHashEncoder.get();
+        for (int i = 0; i < 200; i++) {
+            int width = 1 + random.nextInt(BlurHashEncoder.MAX_SIZE);
+            int height = 1 + random.nextInt(BlurHashEncoder.MAX_SIZE);
+            int componentsX = 1 + random.nextInt(BlurHashEncoder.MAX_COMPONENTS);
+            int componentsY = 1 + random.nextInt(BlurHashEncoder.MAX_COMPONENTS);
+            int[] pixels = new int[width * height];
+            // smooth gradients with noise, like a downscaled photo
+            int base = random.nextInt();
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int r = clamp(((base >> 16) & 0xFF) + x * 4 - y * 2 + random.nextInt(16));
+                    int g = clamp(((base >> 8) & 0xFF) - x * 3 + y * 5 + random.nextInt(16));
+                    int b = clamp((base & 0xFF) + (x - y) * 2 + random.nextInt(16));
+                    pixels[y * width + x] = 0xFF000000 | r << 16 | g << 8 | b;
+                }
+            }
+            System.arraycopy(pixels, 0, encoder.pixels, 0, pixels.length);
+            assertEquals(width + "x" + height + " with " + componentsX + "x" + componentsY,
+                    referenceEncode(pixels, width, height, componentsX, componentsY),
+                    encoder.encode(width, height, componentsX, componentsY));
+        }
+    }
+
+    @Test
+    public void encoderIsReusedOnTheSameThread() {
+        assertSame(BlurHashEncoder.get(), BlurHashEncoder.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyPixels() {
+        BlurHashEncoder.get().encode(BlurHashEncoder.MAX_SIZE + 1, BlurHashEncoder.MAX_SIZE, 4, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyComponents() {
+        BlurHashEncoder.get().encode(8, 8, BlurHashEncoder.MAX_COMPONENTS + 1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyImage() {
+        BlurHashEncoder.get().encode(0, 8, 4, 3);
+    }
+
+    private static void fill(BlurHashEncoder encoder, int width, int height, int color) {
+        for (int i = 0; i < width * height; i++) {
+            encoder.pixels[i] = color;
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static String encode83(int value, int digits) {
+        StringBuilder hash = new StringBuilder();
+        encode83(hash, value, digits);
+        return hash.toString();
+    }
+
+    /**
+     * The straightforward BlurHash algorithm, a full sum over the image per component
+     */
+    private static String referenceEncode(int[] pixels, int width, int height, int componentsX, int componentsY) {
+        float[][] factors = new float[componentsX * componentsY][];
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                float normalisation = i == 0 && j == 0 ? 1 : 2;
+                float r = 0, g = 0, b = 0;
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        float basis = (float) Math.cos(Math.PI * i * x / width) * (float) Math.cos(Math.PI * j * y / height);
+                        int pixel = pixels[y * width + x];
+                        r += basis * srgbToLinear((pixel >> 16) & 0xFF);
+                        g += basis * srgbToLinear((pixel >> 8) & 0xFF);
+                        b += basis * srgbToLinear(pixel & 0xFF);
+                    }
+                }
+                float scale = normalisation / (width * height);
+                factors[j * componentsX + i] = new float[]{r * scale, g * scale, b * scale};
+            }
+        }
+
+        StringBuilder hash = new StringBuilder();
+        encode83(hash, (componentsX - 1) + (componentsY - 1) * 9, 1);
+        float maximumValue;
+        if (factors.length > 1) {
+            float actualMaximum = 0;
+            for (int i = 1; i < factors.length; i++) {
+                for (float value : factors[i]) {
+                    actualMaximum = Math.max(actualMaximum, Math.abs(value));
+                }
+            }
+            int quantised = Math.max(0, Math.min(82, (int) Math.floor(actualMaximum * 166 - 0.5)));
+            maximumValue = (quantised + 1) / 166f;
+            encode83(hash, quantised, 1);
+        } else {
+            maximumValue = 1;
+            encode83(hash, 0, 1);
+        }
+        float[] dc = factors[0];
+        encode83(hash, (linearToSrgb(dc[0]) << 16) + (linearToSrgb(dc[1]) << 8) + linearToSrgb(dc[2]), 4);
+        for (int i = 1; i < factors.length; i++) {
+            float[] ac = factors[i];
+            encode83(hash, quantiseAc(ac[0], maximumValue) * 19 * 19 + quantiseAc(ac[1], maximumValue) * 19
+                    + quantiseAc(ac[2], maximumValue), 2);
+        }
+        return hash.toString();
+    }
+
+    private static float srgbToLinear(int value) {
+        double v = value / 255.0;
+        return (float) (v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4));
+    }
+
+    private static int linearToSrgb(float value) {
+        double v = Math.max(0, Math.min(1, value));
+        return v <= 0.0031308 ? (int) (v * 12.92 * 255 + 0.5) : (int) ((1.055 * Math.pow(v, 1 / 2.4) - 0.055) * 255 + 0.5);
+    }
+
+    private static int quantiseAc(float value, float maximumValue) {
+        double scaled = value / maximumValue;
+        return (int) Math.max(0, Math.min(18, Math.floor(Math.copySign(Math.sqrt(Math.abs(scaled)), scaled) * 9 + 9.5)));
+    }
+
+    private static void encode83(StringBuilder hash, int value, int digits) {
+        for (int i = 1; i <= digits; i++) {
+            int digit = (value / (int) Math.pow(83, digits - i)) % 83;
+            hash.append(BASE83.charAt(digit));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class ChannelCopierTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void transfersFileToFile() throws IOException {
+        byte[] bytes = randomBytes((int) ChannelCopier.TRANSFER_CHUNK_SIZE * 2 + 123);
+        File source = write(bytes);
+        File target = folder.newFile("target");
+        long copied;
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(target)) {
+            copied = ChannelCopier.transfer(in.getChannel(), out.getChannel(), bytes.length);
+        }
+        assertEquals(bytes.length, copied);
+        assertArrayEquals(bytes, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void transferStopsAtEndOfShorterSource() throws IOException {
+        byte[] bytes = randomBytes(1000);
+        File source = write(bytes);
+        File target = folder.newFile("target");
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(target)) {
+            assertEquals(1000, ChannelCopier.transfer(in.getChannel(), out.getChannel(), 5000));
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void copiesAndHashesStream() throws IOException {
+        byte[] bytes = randomBytes(ChannelCopier.BUFFER_SIZE * 3 + 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MessageDigest digest = DedupIndex.newDigest();
+        long copied = ChannelCopier.copy(Channels.newChannel(new ByteArrayInputStream(bytes)),
+                Channels.newChannel(out), digest, Cancellable.NEVER);
+        assertEquals(bytes.length, copied);
+        assertArrayEquals(bytes, out.toByteArray());
+        assertArrayEquals(DedupIndex.newDigest().digest(bytes), digest.digest());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelledCopyStops() throws IOException {
+        ChannelCopier.copy(Channels.newChannel(new ByteArrayInputStream(randomBytes(100))),
+                Channels.newChannel(new ByteArrayOutputStream()), () -> true);
+    }
+
+    @Test
+    public void poolReusesReleasedBuffers() {
+        ByteBufferPool pool = new ByteBufferPool(16, 1);
+        ByteBuffer first = pool.acquire();
+        ByteBuffer second = pool.acquire();
+        assertNotSame(first, second);
+        first.put((byte) 1);
+        pool.release(first);
+        pool.release(second);
+
+        ByteBuffer reused = pool.acquire();
+        assertSame(first, reused);
+        assertEquals(0, reused.position());
+        assertEquals(16, reused.limit());
+        // only one is kept
+        assertNotSame(second, pool.acquire());
+    }
+
+    private File write(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static byte[] randomBytes(int count) {
+        byte[] bytes = new byte[count];
+        new Random(count).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,261 @@
+package com.myhexaville.smartimagepicker;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Streams through {@link ChunkedChannelOutputStream} into an {@link OutputSink} that uploads to an
+ * in-process HTTP server with a chunked request body, the way an app would stream to its backend
+ */
+public class ChunkedChannelOutputStreamTest {
+    private static final int CHUNK_SIZE = ChunkedChannelOutputStream.CHUNK_SIZE;
+
+    private HttpServer server;
+    private final AtomicReference<byte[]> receivedBody = new AtomicReference<>();
+    private final AtomicReference<String> receivedEncoding = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/upload", exchange -> {
+            receivedEncoding.set(exchange.getRequestHeaders().getFirst("Transfer-Encoding"));
+            try (InputStream in = exchange.getRequestBody()) {
+                receivedBody.set(readAll(in));
+            }
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void streamsChunkedBodyToHttpServerAndTee() throws IOException {
+        byte[] image = randomBytes(CHUNK_SIZE * 3 + 1234);
+        HttpURLConnection connection = openUpload();
+        List<Integer> chunkSizes = new ArrayList<>();
+        OutputSink sink = result -> new RecordingChannel(Channels.newChannel(connection.getOutputStream()), chunkSizes);
+        ByteArrayOutputStream teeBytes = new ByteArrayOutputStream();
+
+        ChunkedChannelOutputStream out;
+        try (WritableByteChannel channel = sink.open(null);
+             WritableByteChannel tee = Channels.newChannel(teeBytes)) {
+            out = new ChunkedChannelOutputStream(channel, tee, Cancellable.NEVER);
+            // odd write sizes, the way an encoder writes
+            int offset = 0;
+            while (offset < image.length) {
+                int length = Math.min(777, image.length - offset);
+                out.write(image, offset, length);
+                offset += length;
+            }
+            out.close();
+        }
+        assertEquals(204, connection.getResponseCode());
+
+        assertEquals("chunked", receivedEncoding.get());
+        assertArrayEquals(image, receivedBody.get());
+        assertArrayEquals(image, teeBytes.toByteArray());
+        assertEquals(image.length, out.getBytesWritten());
+        List<Integer> expected = new ArrayList<>();
+        expected.add(CHUNK_SIZE);
+        expected.add(CHUNK_SIZE);
+        expected.add(CHUNK_SIZE);
+        expected.add(1234);
+        assertEquals(expected, chunkSizes);
+    }
+
+    @Test
+    public void singleByteWritesAreChunkedToo() throws IOException {
+        byte[] image = randomBytes(CHUNK_SIZE + 10);
+        List<Integer> chunkSizes = new ArrayList<>();
+        ByteArrayOutputStream sinkBytes = new ByteArrayOutputStream();
+        try (ChunkedChannelOutputStream out = new ChunkedChannelOutputStream(
+                new RecordingChannel(Channels.newChannel(sinkBytes), chunkSizes), null, Cancellable.NEVER)) {
+            for (byte b : image) {
+                out.write(b);
+            }
+        }
+        assertArrayEquals(image, sinkBytes.toByteArray());
+        assertEquals(2, chunkSizes.size());
+        assertEquals(CHUNK_SIZE, (int) chunkSizes.get(0));
+        assertEquals(10, (int) chunkSizes.get(1));
+    }
+
+    @Test(timeout = 10000)
+    public void blockingSinkHoldsTheWriterBack() throws Exception {
+        byte[] image = randomBytes(CHUNK_SIZE * 4);
+        Semaphore permits = new Semaphore(0);
+        AtomicLong received = new AtomicLong();
+        AtomicLong submitted = new AtomicLong();
+        WritableByteChannel gated = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                permits.acquireUninterruptibly();
+                int count = src.remaining();
+                src.position(src.limit());
+                received.addAndGet(count);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try (ChunkedChannelOutputStream out = new ChunkedChannelOutputStream(gated, null, Cancellable.NEVER)) {
+                for (int offset = 0; offset < image.length; offset += 1000) {
+                    out.write(image, offset, Math.min(1000, image.length - offset));
+                    submitted.set(Math.min(offset + 1000, image.length));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+
+        awaitBlocked(writer);
+        assertEquals(0, received.get());
+        // the stream holds one chunk, the writer can't get further ahead of the sink
+        assertTrue(submitted.get() <= CHUNK_SIZE);
+
+        permits.release();
+        while (received.get() < CHUNK_SIZE) {
+            Thread.sleep(5);
+        }
+        awaitBlocked(writer);
+        assertEquals(CHUNK_SIZE, received.get());
+        assertTrue(submitted.get() <= 2 * CHUNK_SIZE);
+
+        permits.release(Integer.MAX_VALUE / 2);
+        writer.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(image.length, received.get());
+    }
+
+    @Test
+    public void cancelledPickStopsBeforeTheNextChunk() throws IOException {
+        ByteArrayOutputStream sinkBytes = new ByteArrayOutputStream();
+        ChunkedChannelOutputStream out = new ChunkedChannelOutputStream(
+                Channels.newChannel(sinkBytes), null, () -> true);
+        try {
+            out.write(new byte[CHUNK_SIZE]);
+            fail("Expected the write to be cancelled");
+        } catch (CancellationException expected) {
+            // nothing was sent
+        }
+        assertEquals(0, sinkBytes.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterCloseFails() throws IOException {
+        ChunkedChannelOutputStream out = new ChunkedChannelOutputStream(
+                Channels.newChannel(new ByteArrayOutputStream()), null, Cancellable.NEVER);
+        out.close();
+        out.write(1);
+    }
+
+    private HttpURLConnection openUpload() throws IOException {
+        URL url = new URL("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/upload");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setChunkedStreamingMode(CHUNK_SIZE);
+        return connection;
+    }
+
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            if (!thread.isAlive()) {
+                fail("Writer finished without blocking");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private static byte[] randomBytes(int count) {
+        byte[] bytes = new byte[count];
+        new Random(count).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Records the size of every buffer the stream hands to the sink
+     */
+    private static final class RecordingChannel implements WritableByteChannel {
+        private final WritableByteChannel delegate;
+        private final List<Integer> sizes;
+
+        RecordingChannel(WritableByteChannel delegate, List<Integer> sizes) {
+            this.delegate = delegate;
+            this.sizes = sizes;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            sizes.add(src.remaining());
+            int count = 0;
+            while (src.hasRemaining()) {
+                count += delegate.write(src);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
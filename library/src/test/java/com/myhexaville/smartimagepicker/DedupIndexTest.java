@@ -0,0 +1,121 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DedupIndexTest {
+    private static final String HASH_A = hash("a");
+    private static final String HASH_B = hash("b");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File journalFile;
+
+    @Before
+    public void setUp() throws IOException {
+        journalFile = new File(folder.newFolder("dedup"), "dedup.journal");
+    }
+
+    @Test
+    public void hashesContentWithSha256() {
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", hash("abc"));
+    }
+
+    @Test
+    public void preKeyChangesWithSizeAndModifiedTime() {
+        String preKey = DedupIndex.preKey("content://media/external/images/media/42", 1000, 5);
+        assertEquals(64, preKey.length());
+        assertEquals(preKey, DedupIndex.preKey("content://media/external/images/media/42", 1000, 5));
+        assertNotEquals(preKey, DedupIndex.preKey("content://media/external/images/media/42", 1001, 5));
+        assertNotEquals(preKey, DedupIndex.preKey("content://media/external/images/media/42", 1000, 6));
+    }
+
+    @Test
+    public void entriesSurviveReopening() throws IOException {
+        DedupIndex index = DedupIndex.open(journalFile);
+        String preKey = DedupIndex.preKey("content://a", 1, 1);
+        index.putContentHash(preKey, HASH_A);
+        index.putOutput(HASH_A, "import", "import-1.jpg");
+        index.putOutput(HASH_A, "crop-0.0.10.10.1-2048", "crop-1.jpg");
+        index.putOutput(HASH_B, "import", "import-2.jpg");
+        index.removeOutput(HASH_B, "import");
+        index.close();
+
+        assertEquals(HASH_A, index.getContentHash(preKey));
+        assertEquals("import-1.jpg", index.getOutput(HASH_A, "import"));
+        assertEquals("crop-1.jpg", index.getOutput(HASH_A, "crop-0.0.10.10.1-2048"));
+        assertNull(index.getOutput(HASH_B, "import"));
+        assertNull(index.getOutput(HASH_A, "other"));
+    }
+
+    @Test
+    public void keepsMostRecentlyUsedEntries() throws IOException {
+        DedupIndex index = DedupIndex.open(journalFile);
+        index.putOutput(hash("first"), "import", "first.jpg");
+        for (int i = 0; i < DedupIndex.MAX_ENTRIES; i++) {
+            if (i == DedupIndex.MAX_ENTRIES / 2) {
+                // used again, so it outlives the ones put after it
+                index.getOutput(hash("first"), "import");
+            }
+            index.putOutput(hash(String.valueOf(i)), "import", "import-" + i + ".jpg");
+        }
+        assertEquals("first.jpg", index.getOutput(hash("first"), "import"));
+        assertNull(index.getOutput(hash("0"), "import"));
+        assertEquals("import-1.jpg", index.getOutput(hash("1"), "import"));
+    }
+
+    @Test
+    public void redundantJournalIsCompacted() throws IOException {
+        DedupIndex index = DedupIndex.open(journalFile);
+        for (int i = 0; i < DedupIndex.MAX_ENTRIES * 4; i++) {
+            index.putOutput(HASH_A, "import", "import-" + i + ".jpg");
+        }
+        assertTrue("Journal has " + lineCount() + " lines", lineCount() <= 2 * DedupIndex.MAX_ENTRIES + 1);
+        index.close();
+        assertEquals("import-" + (DedupIndex.MAX_ENTRIES * 4 - 1) + ".jpg", index.getOutput(HASH_A, "import"));
+    }
+
+    @Test
+    public void brokenJournalStartsOver() throws IOException {
+        DedupIndex index = DedupIndex.open(journalFile);
+        index.putOutput(HASH_A, "import", "import-1.jpg");
+        index.close();
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write("OUT only-two-parts\n".getBytes(Charset.forName("US-ASCII")));
+        }
+
+        assertNull(index.getOutput(HASH_A, "import"));
+        index.putOutput(HASH_B, "import", "import-2.jpg");
+        index.close();
+        assertEquals("import-2.jpg", index.getOutput(HASH_B, "import"));
+    }
+
+    private int lineCount() throws IOException {
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static String hash(String content) {
+        return DedupIndex.toHex(DedupIndex.newDigest().digest(content.getBytes(Charset.forName("UTF-8"))));
+    }
+}
@@ -0,0 +1,176 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExifParserTest {
+    private static final int TYPE_LONG = 4;
+
+    @Test
+    public void readsOrientationInBothByteOrders() throws IOException {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            for (int orientation = ExifParser.ORIENTATION_NORMAL; orientation <= ExifParser.ORIENTATION_ROTATE_270; orientation++) {
+                byte[] jpeg = jpegWithExif(exifWithOrientation(order, orientation));
+                assertEquals(orientation, ExifParser.readOrientation(new ByteArrayInputStream(jpeg)));
+            }
+        }
+    }
+
+    @Test
+    public void invalidOrientationIsNormal() throws IOException {
+        byte[] jpeg = jpegWithExif(exifWithOrientation(ByteOrder.BIG_ENDIAN, 9));
+        assertEquals(ExifParser.ORIENTATION_NORMAL, ExifParser.readOrientation(new ByteArrayInputStream(jpeg)));
+    }
+
+    @Test
+    public void notAJpegHasNoExif() throws IOException {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        assertNull(ExifParser.readExifSegment(new ByteArrayInputStream(png)));
+        assertEquals(ExifParser.ORIENTATION_NORMAL, ExifParser.readOrientation(new ByteArrayInputStream(png)));
+    }
+
+    @Test
+    public void truncatedJpegHasNoExif() throws IOException {
+        byte[] jpeg = jpegWithExif(exifWithOrientation(ByteOrder.BIG_ENDIAN, ExifParser.ORIENTATION_ROTATE_90));
+        assertNull(ExifParser.readExifSegment(new ByteArrayInputStream(Arrays.copyOf(jpeg, 30))));
+    }
+
+    @Test
+    public void truncatedSegmentIsNormal() {
+        byte[] segment = exifWithOrientation(ByteOrder.BIG_ENDIAN, ExifParser.ORIENTATION_ROTATE_90);
+        assertEquals(ExifParser.ORIENTATION_NORMAL, ExifParser.parseOrientation(Arrays.copyOf(segment, 20)));
+    }
+
+    @Test
+    public void composesOrientations() {
+        assertEquals(ExifParser.ORIENTATION_ROTATE_180,
+                ExifParser.compose(ExifParser.ORIENTATION_ROTATE_90, ExifParser.ORIENTATION_ROTATE_90));
+        assertEquals(ExifParser.ORIENTATION_NORMAL,
+                ExifParser.compose(ExifParser.ORIENTATION_ROTATE_90, ExifParser.ORIENTATION_ROTATE_270));
+        assertEquals(ExifParser.ORIENTATION_NORMAL,
+                ExifParser.compose(ExifParser.ORIENTATION_FLIP_HORIZONTAL, ExifParser.ORIENTATION_FLIP_HORIZONTAL));
+        assertEquals(ExifParser.ORIENTATION_ROTATE_180,
+                ExifParser.compose(ExifParser.ORIENTATION_FLIP_HORIZONTAL, ExifParser.ORIENTATION_FLIP_VERTICAL));
+        // a mirrored image turned a quarter is a transpose or a transverse
+        assertEquals(ExifParser.ORIENTATION_TRANSPOSE,
+                ExifParser.compose(ExifParser.ORIENTATION_FLIP_HORIZONTAL, ExifParser.ORIENTATION_ROTATE_270));
+        assertEquals(ExifParser.ORIENTATION_TRANSVERSE,
+                ExifParser.compose(ExifParser.ORIENTATION_FLIP_HORIZONTAL, ExifParser.ORIENTATION_ROTATE_90));
+        for (int orientation = ExifParser.ORIENTATION_NORMAL; orientation <= ExifParser.ORIENTATION_ROTATE_270; orientation++) {
+            assertEquals(orientation, ExifParser.compose(orientation, ExifParser.ORIENTATION_NORMAL));
+            assertEquals(orientation, ExifParser.compose(ExifParser.ORIENTATION_NORMAL, orientation));
+            assertEquals(ExifParser.isSwapped(orientation),
+                    ExifParser.isSwapped(ExifParser.compose(orientation, ExifParser.ORIENTATION_ROTATE_180)));
+        }
+    }
+
+    @Test
+    public void swappedOrientationsAreQuarterTurns() {
+        assertTrue(ExifParser.isSwapped(ExifParser.ORIENTATION_ROTATE_90));
+        assertTrue(ExifParser.isSwapped(ExifParser.ORIENTATION_TRANSVERSE));
+        assertFalse(ExifParser.isSwapped(ExifParser.ORIENTATION_ROTATE_180));
+        assertFalse(ExifParser.isSwapped(ExifParser.ORIENTATION_FLIP_VERTICAL));
+    }
+
+    @Test
+    public void parsesThumbnailFromIfd1() {
+        byte[] thumbnail = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, (byte) 0xFF, (byte) 0xD9};
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            byte[] segment = exifWithThumbnail(order, thumbnail, -1, -1);
+            assertArrayEquals(thumbnail, ExifParser.parseThumbnail(segment));
+        }
+    }
+
+    @Test
+    public void thumbnailOutsideOfSegmentIsIgnored() {
+        byte[] thumbnail = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4};
+        byte[] segment = exifWithThumbnail(ByteOrder.BIG_ENDIAN, thumbnail, -1, thumbnail.length + 1);
+        assertNull(ExifParser.parseThumbnail(segment));
+    }
+
+    /**
+     * offset + length used to wrap around and pass the bounds check, then copyOfRange tried to
+     * allocate gigabytes
+     */
+    @Test
+    public void hugeThumbnailLengthDoesNotOverflow() {
+        byte[] thumbnail = {(byte) 0xFF, (byte) 0xD8, 1, 2};
+        byte[] segment = exifWithThumbnail(ByteOrder.BIG_ENDIAN, thumbnail, -1, Integer.MAX_VALUE - 10);
+        assertNull(ExifParser.parseThumbnail(segment));
+        segment = exifWithThumbnail(ByteOrder.BIG_ENDIAN, thumbnail, Integer.MAX_VALUE - 20, 100);
+        assertNull(ExifParser.parseThumbnail(segment));
+    }
+
+    @Test
+    public void truncatedSegmentHasNoThumbnail() {
+        byte[] thumbnail = {(byte) 0xFF, (byte) 0xD8, 1, 2};
+        byte[] segment = exifWithThumbnail(ByteOrder.BIG_ENDIAN, thumbnail, -1, -1);
+        assertNull(ExifParser.parseThumbnail(Arrays.copyOf(segment, 30)));
+    }
+
+    /**
+     * SOI, a JFIF APP0 to skip over, the Exif APP1, then the start of scan
+     */
+    static byte[] jpegWithExif(byte[] exif) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xE1, (byte) ((exif.length + 2) >> 8), (byte) (exif.length + 2)});
+        out.write(exif);
+        out.write(new byte[]{(byte) 0xFF, (byte) 0xDA, 0, 2, 1, 2, 3, (byte) 0xFF, (byte) 0xD9});
+        return out.toByteArray();
+    }
+
+    static byte[] exifWithOrientation(ByteOrder order, int orientation) {
+        ByteBuffer tiff = ByteBuffer.allocate(8 + 2 + 12 + 4).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) ExifParser.TAG_ORIENTATION).putShort((short) ExifParser.TYPE_SHORT).putInt(1)
+                .putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+        return exif(tiff);
+    }
+
+    private static byte[] exif(ByteBuffer tiff) {
+        byte[] segment = new byte[ExifParser.EXIF_HEADER.length + tiff.capacity()];
+        System.arraycopy(ExifParser.EXIF_HEADER, 0, segment, 0, ExifParser.EXIF_HEADER.length);
+        System.arraycopy(tiff.array(), 0, segment, ExifParser.EXIF_HEADER.length, tiff.capacity());
+        return segment;
+    }
+
+    /**
+     * "Exif\0\0", TIFF header, IFD0 without entries pointing at IFD1 with the thumbnail offset and
+     * length, then the thumbnail. -1 writes the real offset or length
+     */
+    static byte[] exifWithThumbnail(ByteOrder order, byte[] thumbnail, int offset, int length) {
+        int ifd1 = 8 + 2 + 4;
+        int thumbnailOffset = ifd1 + 2 + 2 * 12 + 4;
+        ByteBuffer tiff = ByteBuffer.allocate(thumbnailOffset + thumbnail.length).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 0).putInt(ifd1);
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0201).putShort((short) TYPE_LONG).putInt(1)
+                .putInt(offset == -1 ? thumbnailOffset : offset);
+        tiff.putShort((short) 0x0202).putShort((short) TYPE_LONG).putInt(1)
+                .putInt(length == -1 ? thumbnail.length : length);
+        tiff.putInt(0);
+        tiff.put(thumbnail);
+        return exif(tiff);
+    }
+}
@@ -0,0 +1,139 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HeaderProbeTest {
+
+    @Test
+    public void readsJpegFrameHeader() throws IOException {
+        HeaderProbe.Header header = probe(encode("jpg", 321, 123));
+        assertEquals(HeaderProbe.MIME_JPEG, header.mimeType);
+        assertEquals(321, header.width);
+        assertEquals(123, header.height);
+        assertEquals(ExifParser.ORIENTATION_NORMAL, header.orientation);
+    }
+
+    @Test
+    public void readsOrientationBeforeJpegFrame() throws IOException {
+        byte[] jpeg = encode("jpg", 40, 30);
+        byte[] exif = ExifParserTest.exifWithOrientation(ByteOrder.LITTLE_ENDIAN, ExifParser.ORIENTATION_ROTATE_90);
+        HeaderProbe.Header header = probe(withSegmentAfterSoi(jpeg, exif));
+        assertEquals(40, header.width);
+        assertEquals(30, header.height);
+        assertEquals(ExifParser.ORIENTATION_ROTATE_90, header.orientation);
+    }
+
+    @Test
+    public void readsPngAndGif() throws IOException {
+        HeaderProbe.Header png = probe(encode("png", 7, 9));
+        assertEquals(HeaderProbe.MIME_PNG, png.mimeType);
+        assertEquals(7, png.width);
+        assertEquals(9, png.height);
+
+        HeaderProbe.Header gif = probe(encode("gif", 300, 2));
+        assertEquals(HeaderProbe.MIME_GIF, gif.mimeType);
+        assertEquals(300, gif.width);
+        assertEquals(2, gif.height);
+    }
+
+    @Test
+    public void readsLossyWebp() throws IOException {
+        byte[] chunk = {0, 0, 0, (byte) 0x9D, 0x01, 0x2A, (byte) 0xE8, 0x03, (byte) 0xD0, 0x02};
+        HeaderProbe.Header header = probe(webp("VP8 ", chunk));
+        assertEquals(HeaderProbe.MIME_WEBP, header.mimeType);
+        assertEquals(1000, header.width);
+        assertEquals(720, header.height);
+    }
+
+    @Test
+    public void readsLosslessWebp() throws IOException {
+        // 14 bits width - 1, 14 bits height - 1, little endian
+        int bits = (640 - 1) | (480 - 1) << 14;
+        byte[] chunk = {0x2F, (byte) bits, (byte) (bits >> 8), (byte) (bits >> 16), (byte) (bits >> 24)};
+        HeaderProbe.Header header = probe(webp("VP8L", chunk));
+        assertEquals(640, header.width);
+        assertEquals(480, header.height);
+    }
+
+    @Test
+    public void readsExtendedWebp() throws IOException {
+        byte[] chunk = {0x10, 0, 0, 0, (byte) 0xFF, 0x0F, 0, 0x37, 0x0B, 0};
+        HeaderProbe.Header header = probe(webp("VP8X", chunk));
+        assertEquals(4096, header.width);
+        assertEquals(2872, header.height);
+    }
+
+    @Test
+    public void unknownOrBrokenHeaderIsNull() throws IOException {
+        assertNull(probe(new byte[]{'B', 'M', 0, 0, 0, 0}));
+        assertNull(probe(new byte[0]));
+        byte[] jpeg = encode("jpg", 100, 100);
+        assertNull(probe(Arrays.copyOf(jpeg, 10)));
+        byte[] png = encode("png", 100, 100);
+        png[12] = 'X';
+        assertNull(probe(png));
+        assertNull(probe(webp("VP8 ", new byte[]{0, 0, 0, 1, 2, 3, 4, 5, 6, 7})));
+    }
+
+    private static HeaderProbe.Header probe(byte[] bytes) throws IOException {
+        return HeaderProbe.read(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] encode(String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height,
+                format.equals("gif") ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, out)) {
+            throw new IOException("No writer for " + format);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] withSegmentAfterSoi(byte[] jpeg, byte[] app1) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(ExifParser.MARKER_APP1);
+        out.write((app1.length + 2) >> 8);
+        out.write(app1.length + 2);
+        out.write(app1, 0, app1.length);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static byte[] webp(String fourCc, byte[] chunk) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeAscii(out, "RIFF");
+        writeLittleEndianInt(out, 4 + 8 + chunk.length);
+        writeAscii(out, "WEBP");
+        writeAscii(out, fourCc);
+        writeLittleEndianInt(out, chunk.length);
+        out.write(chunk, 0, chunk.length);
+        return out.toByteArray();
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+
+    private static void writeLittleEndianInt(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+}
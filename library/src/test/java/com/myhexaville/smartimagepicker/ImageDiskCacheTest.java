@@ -0,0 +1,202 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImageDiskCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Runnable> scheduledTrims = new ArrayList<>();
+    private final Executor trimExecutor = scheduledTrims::add;
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("cache");
+    }
+
+    @Test
+    public void committedEntriesSurviveReopening() throws IOException {
+        ImageDiskCache cache = open(1000, 10);
+        write(cache, "a.jpg", 100);
+        write(cache, "b.jpg", 200);
+        cache.remove("a.jpg");
+        write(cache, "c.jpg", 50);
+        cache.close();
+
+        assertEquals(250, cache.size());
+        assertEquals(2, cache.entryCount());
+        assertNull(cache.get("a.jpg"));
+        assertNotNull(cache.get("b.jpg"));
+        assertNotNull(cache.get("c.jpg"));
+    }
+
+    @Test
+    public void uncommittedEntriesOfPreviousProcessAreKept() throws IOException {
+        ImageDiskCache cache = open(1000, 10);
+        File capture = cache.newFile("capture.jpg");
+        writeBytes(capture, 300);
+        cache.close();
+
+        // not committed, so it isn't readable and doesn't count towards the byte budget
+        assertNull(cache.get("capture.jpg"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.entryCount());
+        assertTrue(cache.commit("capture.jpg"));
+        assertEquals(300, cache.size());
+    }
+
+    @Test
+    public void loadReplaysJournalBeforeFirstUse() throws IOException {
+        ImageDiskCache cache = open(1000, 10);
+        write(cache, "a.jpg", 100);
+        cache.close();
+
+        cache.load();
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    public void reservingKeepsWhatTheCameraAlreadyWrote() throws IOException {
+        ImageDiskCache cache = open(1000, 10);
+        cache.load();
+        // the camera app may write before the background executor reserves the file
+        writeBytes(cache.file("camera.jpg"), 300);
+        assertFalse(cache.newFile("camera.jpg").createNewFile());
+        assertTrue(cache.commit("camera.jpg"));
+        assertEquals(300, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverEntryBudget() throws IOException {
+        ImageDiskCache cache = open(1000, 2);
+        write(cache, "a.jpg", 10);
+        write(cache, "b.jpg", 10);
+        cache.get("a.jpg");
+        write(cache, "c.jpg", 10);
+        runTrims();
+
+        assertEquals(2, cache.entryCount());
+        assertNotNull(cache.get("a.jpg"));
+        assertNull(cache.get("b.jpg"));
+        assertFalse(cache.file("b.jpg").exists());
+        assertNotNull(cache.get("c.jpg"));
+    }
+
+    @Test
+    public void evictsOverByteBudgetButNotFilesBeingWritten() throws IOException {
+        ImageDiskCache cache = open(100, 10);
+        File writing = cache.newFile("writing.jpg");
+        writeBytes(writing, 10);
+        write(cache, "a.jpg", 60);
+        write(cache, "b.jpg", 60);
+        runTrims();
+
+        assertEquals(60, cache.size());
+        assertNull(cache.get("a.jpg"));
+        assertNotNull(cache.get("b.jpg"));
+        assertTrue(writing.exists());
+    }
+
+    @Test
+    public void heldCacheKeepsEntriesUntilReleased() throws IOException {
+        ImageDiskCache cache = open(1000, 2);
+        write(cache, "old.jpg", 10);
+        cache.hold();
+        for (int i = 0; i < 5; i++) {
+            write(cache, "batch-" + i + ".jpg", 10);
+            runTrims();
+        }
+        // nothing the batch wrote is evicted while it's delivered
+        assertNull(cache.get("old.jpg"));
+        assertEquals(5, cache.entryCount());
+        for (int i = 0; i < 5; i++) {
+            assertTrue(cache.file("batch-" + i + ".jpg").exists());
+        }
+
+        cache.release();
+        runTrims();
+        assertEquals(2, cache.entryCount());
+        assertNotNull(cache.get("batch-3.jpg"));
+        assertNotNull(cache.get("batch-4.jpg"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void releaseWithoutHoldFails() {
+        open(1000, 2).release();
+    }
+
+    @Test
+    public void brokenJournalIsRebuilt() throws IOException {
+        ImageDiskCache cache = open(1000, 10);
+        write(cache, "a.jpg", 10);
+        cache.close();
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(new File(directory, ImageDiskCache.JOURNAL_FILE), true), Charset.forName("US-ASCII"))) {
+            writer.write("BOGUS a.jpg\n");
+        }
+
+        // what was read before the broken line is kept
+        assertEquals(1, cache.entryCount());
+        write(cache, "b.jpg", 10);
+        cache.close();
+        assertEquals(2, cache.entryCount());
+        assertNotNull(cache.get("a.jpg"));
+        assertNotNull(cache.get("b.jpg"));
+    }
+
+    @Test
+    public void commitOfMissingFileFails() throws IOException {
+        ImageDiskCache cache = open(1000, 10);
+        cache.newFile("missing.jpg");
+        assertFalse(cache.commit("missing.jpg"));
+        assertEquals(0, cache.entryCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void journalKeysAreRejected() throws IOException {
+        open(1000, 10).newFile("journal.tmp");
+    }
+
+    private ImageDiskCache open(long maxBytes, int maxEntries) {
+        return ImageDiskCache.open(directory, maxBytes, maxEntries, trimExecutor);
+    }
+
+    private void runTrims() {
+        List<Runnable> trims = new ArrayList<>(scheduledTrims);
+        scheduledTrims.clear();
+        for (Runnable trim : trims) {
+            trim.run();
+        }
+    }
+
+    private static void write(ImageDiskCache cache, String key, int length) throws IOException {
+        writeBytes(cache.newFile(key), length);
+        assertTrue(cache.commit(key));
+    }
+
+    private static void writeBytes(File file, int length) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JpegMetadataStripperTest {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final int APP0 = 0xE0;
+    private static final int APP1 = 0xE1;
+    private static final int APP2 = 0xE2;
+    private static final int APP13 = 0xED;
+    private static final int COM = 0xFE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void stripsEverythingButTheImage() throws IOException {
+        byte[] jpeg = jpegWithMetadata(ExifParser.ORIENTATION_NORMAL);
+        StripOutput output = strip(jpeg, EnumSet.noneOf(JpegMetadata.class));
+
+        // Exif, XMP, ICC, Photoshop and comment
+        assertEquals(5, output.removed);
+        List<Integer> markers = headerMarkers(output.bytes);
+        assertFalse(markers.contains(APP1));
+        assertFalse(markers.contains(APP2));
+        assertFalse(markers.contains(APP13));
+        assertFalse(markers.contains(COM));
+        // JFIF stays, decoders need it to tell the color space
+        assertTrue(markers.contains(APP0));
+        assertSameImage(jpeg, output.bytes);
+        assertEquals(jpeg.length - metadataBytes(jpeg) + jfifBytes(jpeg), output.bytes.length);
+    }
+
+    @Test
+    public void keepsOnlyOrientationOfExif() throws IOException {
+        byte[] jpeg = jpegWithMetadata(ExifParser.ORIENTATION_ROTATE_270);
+        StripOutput output = strip(jpeg, EnumSet.of(JpegMetadata.ORIENTATION));
+
+        assertEquals(5, output.removed);
+        byte[] exif = ExifParser.readExifSegment(new ByteArrayInputStream(output.bytes));
+        assertEquals(ExifParser.ORIENTATION_ROTATE_270, ExifParser.parseOrientation(exif));
+        // just the header, TIFF header and one IFD entry
+        assertEquals(32, exif.length);
+        assertSameImage(jpeg, output.bytes);
+    }
+
+    @Test
+    public void normalOrientationNeedsNoExif() throws IOException {
+        byte[] jpeg = jpegWithMetadata(ExifParser.ORIENTATION_NORMAL);
+        StripOutput output = strip(jpeg, EnumSet.of(JpegMetadata.ORIENTATION));
+        assertFalse(headerMarkers(output.bytes).contains(APP1));
+    }
+
+    @Test
+    public void keepsAllowedSegmentsAsTheyAre() throws IOException {
+        byte[] jpeg = jpegWithMetadata(ExifParser.ORIENTATION_NORMAL);
+        StripOutput output = strip(jpeg, EnumSet.of(JpegMetadata.COLOR_PROFILE, JpegMetadata.XMP, JpegMetadata.COMMENTS));
+
+        // Exif and Photoshop
+        assertEquals(2, output.removed);
+        List<Integer> markers = headerMarkers(output.bytes);
+        assertEquals(1, Collections.frequency(markers, APP1));
+        assertTrue(markers.contains(APP2));
+        assertTrue(markers.contains(COM));
+        assertFalse(markers.contains(APP13));
+        assertTrue(contains(output.bytes, "http://ns.adobe.com/xap/1.0/"));
+        assertTrue(contains(output.bytes, "ICC_PROFILE"));
+        assertSameImage(jpeg, output.bytes);
+    }
+
+    @Test
+    public void jpegWithoutMetadataIsCopiedAsItIs() throws IOException {
+        byte[] jpeg = encodeJpeg();
+        StripOutput output = strip(jpeg, EnumSet.noneOf(JpegMetadata.class));
+        assertEquals(0, output.removed);
+        assertArrayEquals(jpeg, output.bytes);
+    }
+
+    @Test
+    public void otherFormatsAreLeftAlone() throws IOException {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0, 0, 0, 0};
+        StripOutput output = strip(png, EnumSet.noneOf(JpegMetadata.class));
+        assertEquals(-1, output.removed);
+        assertEquals(0, output.bytes.length);
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedHeaderFails() throws IOException {
+        byte[] jpeg = jpegWithMetadata(ExifParser.ORIENTATION_ROTATE_90);
+        strip(Arrays.copyOf(jpeg, 100), EnumSet.noneOf(JpegMetadata.class));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelledStripStops() throws IOException {
+        File source = write(jpegWithMetadata(ExifParser.ORIENTATION_NORMAL));
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(folder.newFile("cancelled.jpg"))) {
+            JpegMetadataStripper.strip(in.getChannel(), out.getChannel(), EnumSet.noneOf(JpegMetadata.class), () -> true);
+        }
+    }
+
+    private StripOutput strip(byte[] jpeg, Set<JpegMetadata> kept) throws IOException {
+        File source = write(jpeg);
+        File target = folder.newFile("stripped-" + source.getName());
+        int removed;
+        try (FileInputStream in = new FileInputStream(source);
+             FileOutputStream out = new FileOutputStream(target)) {
+            removed = JpegMetadataStripper.strip(in.getChannel(), out.getChannel(), kept, Cancellable.NEVER);
+        }
+        return new StripOutput(removed, Files.readAllBytes(target.toPath()));
+    }
+
+    private File write(byte[] bytes) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    /**
+     * Pixels decode the same and everything from the start of scan on is identical
+     */
+    private static void assertSameImage(byte[] expected, byte[] actual) throws IOException {
+        assertArrayEquals(Arrays.copyOfRange(expected, startOfScan(expected), expected.length),
+                Arrays.copyOfRange(actual, startOfScan(actual), actual.length));
+        BufferedImage expectedImage = ImageIO.read(new ByteArrayInputStream(expected));
+        BufferedImage actualImage = ImageIO.read(new ByteArrayInputStream(actual));
+        int width = expectedImage.getWidth();
+        int height = expectedImage.getHeight();
+        assertEquals(width, actualImage.getWidth());
+        assertEquals(height, actualImage.getHeight());
+        assertArrayEquals(expectedImage.getRGB(0, 0, width, height, null, 0, width),
+                actualImage.getRGB(0, 0, width, height, null, 0, width));
+    }
+
+    private static byte[] encodeJpeg() throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(64);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A real JPEG with Exif, XMP, an ICC profile, Photoshop IRB and a comment in front of its JFIF segment
+     */
+    private static byte[] jpegWithMetadata(int orientation) throws IOException {
+        byte[] jpeg = encodeJpeg();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        writeSegment(out, APP1, ExifParserTest.exifWithOrientation(ByteOrder.BIG_ENDIAN, orientation));
+        writeSegment(out, APP1, ascii("http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>"));
+        writeSegment(out, APP2, concat(ascii("ICC_PROFILE\0"), new byte[]{1, 1}, new byte[128]));
+        writeSegment(out, APP13, ascii("Photoshop 3.0\08BIM"));
+        writeSegment(out, COM, ascii("taken at 52.52N 13.40E"));
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write(payload.length + 2);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static List<Integer> headerMarkers(byte[] jpeg) {
+        List<Integer> markers = new ArrayList<>();
+        int position = 2;
+        while ((jpeg[position + 1] & 0xFF) != ExifParser.MARKER_SOS) {
+            markers.add(jpeg[position + 1] & 0xFF);
+            position += 2 + ((jpeg[position + 2] & 0xFF) << 8 | jpeg[position + 3] & 0xFF);
+        }
+        return markers;
+    }
+
+    private static int startOfScan(byte[] jpeg) {
+        int position = 2;
+        while ((jpeg[position + 1] & 0xFF) != ExifParser.MARKER_SOS) {
+            position += 2 + ((jpeg[position + 2] & 0xFF) << 8 | jpeg[position + 3] & 0xFF);
+        }
+        return position;
+    }
+
+    private static int metadataBytes(byte[] jpeg) {
+        return segmentBytes(jpeg, true);
+    }
+
+    private static int jfifBytes(byte[] jpeg) {
+        return segmentBytes(jpeg, false);
+    }
+
+    /**
+     * Bytes of all APPn and COM segments, or of the APP0 ones only
+     */
+    private static int segmentBytes(byte[] jpeg, boolean allMetadata) {
+        int bytes = 0;
+        int position = 2;
+        while ((jpeg[position + 1] & 0xFF) != ExifParser.MARKER_SOS) {
+            int marker = jpeg[position + 1] & 0xFF;
+            int size = 2 + ((jpeg[position + 2] & 0xFF) << 8 | jpeg[position + 3] & 0xFF);
+            boolean metadata = marker >= APP0 && marker <= 0xEF || marker == COM;
+            if (allMetadata ? metadata : marker == APP0) {
+                bytes += size;
+            }
+            position += size;
+        }
+        return bytes;
+    }
+
+    private static boolean contains(byte[] bytes, String text) {
+        return new String(bytes, US_ASCII).contains(text);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(US_ASCII);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class StripOutput {
+        final int removed;
+        final byte[] bytes;
+
+        StripOutput(int removed, byte[] bytes) {
+            this.removed = removed;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PickJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("session");
+    }
+
+    @Test
+    public void cropIsResumedFromWrittenJournal() throws IOException {
+        PickJournal journal = new PickJournal();
+        journal.stage = PickerStage.CROP;
+        journal.cameraFile = "camera-1.jpg";
+        journal.sourceUri = "content://media/external/images/media/42";
+        journal.imagePath = new File(directory, "import \u00e9 1.jpg").getPath();
+        journal.withCrop = true;
+        journal.autoCrop = false;
+        journal.aspectRatioX = 4;
+        journal.aspectRatioY = 3;
+        journal.outputPath = "/data/out.jpg";
+        journal.write(directory);
+
+        PickJournal read = PickJournal.read(directory);
+        assertEquals(PickerStage.CROP, read.stage);
+        assertTrue(read.isWaitingForActivity());
+        assertEquals("camera-1.jpg", read.cameraFile);
+        assertEquals(journal.sourceUri, read.sourceUri);
+        assertEquals(journal.imagePath, read.imagePath);
+        assertTrue(read.withCrop);
+        assertFalse(read.autoCrop);
+        assertEquals(4, read.aspectRatioX);
+        assertEquals(3, read.aspectRatioY);
+        assertEquals("/data/out.jpg", read.outputPath);
+    }
+
+    @Test
+    public void returnedCropIsProcessedAgain() throws IOException {
+        PickJournal journal = new PickJournal();
+        journal.stage = PickerStage.CROP;
+        journal.returned = true;
+        journal.sourceUri = "content://media/external/images/media/42";
+        journal.imagePath = "/data/import-1.jpg";
+        journal.cropRect = new int[]{10, 20, 310, 220};
+        journal.cropOrientation = ExifParser.ORIENTATION_ROTATE_90;
+        journal.write(directory);
+
+        PickJournal read = PickJournal.read(directory);
+        assertFalse(read.isWaitingForActivity());
+        assertTrue(read.isProcessing());
+        assertArrayEquals(new int[]{10, 20, 310, 220}, read.cropRect);
+        assertEquals(ExifParser.ORIENTATION_ROTATE_90, read.cropOrientation);
+    }
+
+    @Test
+    public void returnedPickNeedsItsUri() throws IOException {
+        PickJournal journal = new PickJournal();
+        journal.stage = PickerStage.CAMERA;
+        journal.returned = true;
+        journal.write(directory);
+        assertFalse(PickJournal.read(directory).isProcessing());
+
+        journal.sourceUri = "file:///data/camera-1.jpg";
+        journal.write(directory);
+        assertTrue(PickJournal.read(directory).isProcessing());
+
+        // a crop result can't be redone without its rectangle
+        journal.stage = PickerStage.CROP;
+        journal.imagePath = "/data/camera-1.jpg";
+        journal.write(directory);
+        assertFalse(PickJournal.read(directory).isProcessing());
+    }
+
+    @Test
+    public void finishedPickKeepsOnlyTheOutput() throws IOException {
+        PickJournal journal = new PickJournal();
+        journal.stage = PickerStage.CAMERA;
+        journal.cameraFile = "camera-1.jpg";
+        journal.write(directory);
+
+        journal = new PickJournal();
+        journal.outputPath = "/data/out.jpg";
+        journal.write(directory);
+
+        PickJournal read = PickJournal.read(directory);
+        assertNull(read.stage);
+        assertFalse(read.isWaitingForActivity());
+        assertNull(read.cameraFile);
+        assertEquals("/data/out.jpg", read.outputPath);
+        assertFalse(new File(directory, "journal.pick.tmp").exists());
+    }
+
+    @Test
+    public void missingJournalIsEmpty() {
+        PickJournal read = PickJournal.read(new File(directory, "missing"));
+        assertNull(read.stage);
+        assertNull(read.outputPath);
+    }
+
+    @Test
+    public void brokenJournalIsEmpty() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(directory, PickJournal.FILE_NAME))) {
+            out.write("stage CAMERA\ncamera camera-1.jpg\ncrop true 4\n".getBytes("UTF-8"));
+        }
+        PickJournal read = PickJournal.read(directory);
+        assertNull(read.stage);
+        assertNull(read.cameraFile);
+
+        try (FileOutputStream out = new FileOutputStream(new File(directory, PickJournal.FILE_NAME))) {
+            out.write("stage SOMEWHERE\n".getBytes("UTF-8"));
+        }
+        assertNull(PickJournal.read(directory).stage);
+    }
+
+    @Test
+    public void deletedJournalIsEmpty() throws IOException {
+        PickJournal journal = new PickJournal();
+        journal.stage = PickerStage.CHOOSER;
+        journal.write(directory);
+        assertTrue(PickJournal.read(directory).isWaitingForActivity());
+
+        PickJournal.delete(directory);
+        assertNull(PickJournal.read(directory).stage);
+    }
+}
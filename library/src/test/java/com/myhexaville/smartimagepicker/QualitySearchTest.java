@@ -0,0 +1,62 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QualitySearchTest {
+
+    @Test
+    public void findsHighestQualityThatFits() throws IOException {
+        for (long maxBytes = 100; maxBytes <= 10000; maxBytes += 37) {
+            List<Integer> tried = new ArrayList<>();
+            QualitySearch.Result result = QualitySearch.search(1, 100, maxBytes, quality -> {
+                tried.add(quality);
+                return quality * 100L;
+            });
+            int expected = (int) Math.min(100, maxBytes / 100);
+            assertTrue(result.fits);
+            assertEquals(expected, result.quality);
+            assertEquals(expected * 100L, result.bytes);
+            assertEquals(tried.size(), result.attempts);
+            assertTrue("Too many encodes: " + tried, result.attempts <= 8);
+        }
+    }
+
+    @Test
+    public void smallImageFitsAtMaxQualityRightAway() throws IOException {
+        QualitySearch.Result result = QualitySearch.search(1, 90, 1000, quality -> 10);
+        assertTrue(result.fits);
+        assertEquals(90, result.quality);
+        assertEquals(1, result.attempts);
+    }
+
+    @Test
+    public void returnsMinQualityWhenNothingFits() throws IOException {
+        QualitySearch.Result result = QualitySearch.search(20, 100, 50, quality -> 1000L + quality);
+        assertFalse(result.fits);
+        assertEquals(20, result.quality);
+        assertEquals(1020, result.bytes);
+    }
+
+    @Test
+    public void singleQualityIsTriedOnce() throws IOException {
+        QualitySearch.Result result = QualitySearch.search(70, 70, 50, quality -> 100);
+        assertFalse(result.fits);
+        assertEquals(70, result.quality);
+        assertEquals(1, result.attempts);
+    }
+
+    @Test(expected = IOException.class)
+    public void encoderFailureIsThrown() throws IOException {
+        QualitySearch.search(1, 100, 50, quality -> {
+            throw new IOException("Encoder failed");
+        });
+    }
+}
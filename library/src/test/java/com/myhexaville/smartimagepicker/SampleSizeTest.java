@@ -0,0 +1,44 @@
+package com.myhexaville.smartimagepicker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SampleSizeTest {
+
+    @Test
+    public void fitsLongerSideIntoBox() {
+        assertEquals(0.25f, SampleSize.fitScale(4000, 3000, 1000, 1000), 0f);
+        assertEquals(0.5f, SampleSize.fitScale(3000, 4000, 2000, 2000), 0f);
+    }
+
+    @Test
+    public void neverScalesUp() {
+        assertEquals(1f, SampleSize.fitScale(100, 100, 1000, 1000), 0f);
+        assertEquals(1f, SampleSize.fitScale(0, 100, 10, 10), 0f);
+    }
+
+    @Test
+    public void sampleSizeLeavesDecodeAtLeastAsBigAsOutput() {
+        assertEquals(1, SampleSize.calculate(1000, 1000, 1000, 1000));
+        assertEquals(1, SampleSize.calculate(1999, 1999, 1000, 1000));
+        assertEquals(2, SampleSize.calculate(2000, 2000, 1000, 1000));
+        assertEquals(4, SampleSize.calculate(4000, 3000, 1000, 1000));
+        assertEquals(4, SampleSize.calculate(7999, 6000, 1000, 1000));
+        for (int width = 1; width < 10000; width += 97) {
+            for (int max = 1; max < 3000; max += 131) {
+                int sampleSize = SampleSize.calculate(width, width / 2 + 1, max, max);
+                assertEquals(0, sampleSize & (sampleSize - 1));
+                float scale = SampleSize.fitScale(width, width / 2 + 1, max, max);
+                assertTrue(width / sampleSize >= SampleSize.scaled(width, scale) - 1);
+            }
+        }
+    }
+
+    @Test
+    public void scaledSizeIsAtLeastOnePixel() {
+        assertEquals(1, SampleSize.scaled(10, 0.01f));
+        assertEquals(750, SampleSize.scaled(1000, 0.75f));
+    }
+}